@@ -3,6 +3,7 @@ package com.lyl.pkuhole;
 import java.util.Observable;
 
 import com.lyl.pkuhole.gui.MainWindow;
+import com.lyl.pkuhole.image.NegativeImageCache;
 import com.lyl.pkuhole.model.AttentionManager;
 import com.lyl.pkuhole.model.User;
 import com.lyl.pkuhole.utils.UIUtils;
@@ -32,6 +33,7 @@ public class PKUHole extends Observable {
 	public static void main(String[] arg) {
 		UIUtils.setDefaultLookAndFeel();
 		UIUtils.initGlobalFont();
+		NegativeImageCache.loadAsync();
 		new MainWindow().init();
 	}
 
@@ -1,32 +1,49 @@
 package com.lyl.pkuhole;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.message.BasicNameValuePair;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.image.CompressedImage;
 import com.lyl.pkuhole.model.Comment;
 import com.lyl.pkuhole.model.Topic;
 import com.lyl.pkuhole.model.TopicType;
 import com.lyl.pkuhole.model.User;
-import com.lyl.pkuhole.utils.TopicTypeDeserializer;
+import com.lyl.pkuhole.network.HttpTransport;
+import com.lyl.pkuhole.network.IOExecutor;
+import com.lyl.pkuhole.network.ImageFormEntity;
+import com.lyl.pkuhole.network.ProgressListener;
+import com.lyl.pkuhole.network.RequestCoalescer;
+import com.lyl.pkuhole.network.ResponseCache;
+import com.lyl.pkuhole.utils.CommentAdapter;
+import com.lyl.pkuhole.utils.JsonUtils;
+import com.lyl.pkuhole.utils.TopicAdapter;
+import com.lyl.pkuhole.utils.TopicTypeAdapter;
+import com.lyl.pkuhole.utils.UserAdapter;
 
 public class PKUHoleAPI {
 
@@ -34,11 +51,19 @@ public class PKUHoleAPI {
 	private static final String PKU_HOLE_LOGIN_PATH = "/services/login/login.php";
 	private static final String PKU_HOLE_API_PATH = "/services/pkuhole/api.php";
 	public static final String PKU_HOLE_PIC_PATH = "/services/pkuhole/images/";
-	private static final String USER_AGENT = "okhttp/3.4.1";
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final ContentType FORM_CONTENT_TYPE = ContentType.create("application/x-www-form-urlencoded");
 
 	private static final JsonParser parser = new JsonParser();
-	private static final Gson gson = new GsonBuilder().registerTypeAdapter(TopicType.class, new TopicTypeDeserializer())
-			.create();
+	private static final Gson gson = new GsonBuilder().registerTypeAdapter(TopicType.class, new TopicTypeAdapter())
+			.registerTypeAdapter(Topic.class, new TopicAdapter()).registerTypeAdapter(Comment.class, new CommentAdapter())
+			.registerTypeAdapter(User.class, new UserAdapter()).create();
+	private static final RequestCoalescer coalescer = new RequestCoalescer();
+	private static final ResponseCache responseCache = new ResponseCache(256);
+
+	private static final long SECOND = 1000;
+	private static final long MINUTE = 60 * SECOND;
+	private static final long QUIET_AGE = 24 * 60 * MINUTE;
 
 	/**
 	 * Perform HTTP GET method with PKUHole server.
@@ -51,38 +76,7 @@ public class PKUHoleAPI {
 	 * @throws PKUHoleException
 	 */
 	private static JsonElement api(String path, List<NameValuePair> args) throws PKUHoleException {
-		URL url;
-		try {
-			url = new URIBuilder().setScheme("http").setHost(PKU_HOLE_HOST).setPath(path).addParameters(args).build()
-					.toURL();
-		} catch (MalformedURLException | URISyntaxException e) {
-			throw new PKUHoleException("Bad URL: " + e.getMessage());
-		}
-		try {
-
-			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-			conn.setRequestMethod("GET");
-			conn.setRequestProperty("Host", PKU_HOLE_HOST);
-			conn.setRequestProperty("User-Agent", USER_AGENT);
-
-			int status = conn.getResponseCode();
-			if (status == 200) {
-				InputStreamReader response = new InputStreamReader(conn.getInputStream());
-				BufferedReader reader = new BufferedReader(response);
-				String line;
-				StringBuilder sb = new StringBuilder();
-				while ((line = reader.readLine()) != null) {
-					sb.append(line);
-				}
-				return parser.parse(sb.toString());
-			} else {
-				throw new PKUHoleException(String.format("ʧ(%d): %s", status, conn.getResponseMessage()));
-			}
-
-		} catch (IOException e) {
-			throw new PKUHoleException("粻");
-		}
-
+		return HttpTransport.get(buildURI(path, args), PKUHoleAPI::parse);
 	}
 
 	/**
@@ -99,42 +93,26 @@ public class PKUHoleAPI {
 	 */
 	private static JsonElement aqi(String path, List<NameValuePair> args, List<NameValuePair> content)
 			throws PKUHoleException {
-		URL url;
+		return HttpTransport.post(buildURI(path, args), formEntity(NVP2Bytes(content)), PKUHoleAPI::parse);
+	}
+
+	private static URI buildURI(String path, List<NameValuePair> args) throws PKUHoleException {
 		try {
-			url = new URIBuilder().setScheme("http").setHost(PKU_HOLE_HOST).setPath(path).addParameters(args).build()
-					.toURL();
-		} catch (MalformedURLException | URISyntaxException e) {
+			return new URIBuilder().setScheme("http").setHost(PKU_HOLE_HOST).setPath(path).addParameters(args).build();
+		} catch (URISyntaxException e) {
 			throw new PKUHoleException("Bad URL: " + e.getMessage());
 		}
+	}
+
+	private static ByteArrayEntity formEntity(byte[] content) {
+		return new ByteArrayEntity(content, FORM_CONTENT_TYPE);
+	}
+
+	private static JsonElement parse(InputStream in) throws IOException {
 		try {
-			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-			conn.setRequestMethod("POST");
-			conn.setRequestProperty("Host", PKU_HOLE_HOST);
-			conn.setRequestProperty("User-Agent", USER_AGENT);
-			conn.setRequestProperty("Content-type", "application/x-www-form-urlencoded");
-			conn.setDoOutput(true);
-			conn.setUseCaches(false);
-
-			OutputStream out = conn.getOutputStream();
-			out.write(NVP2Bytes(content));
-			out.flush();
-			out.close();
-
-			int status = conn.getResponseCode();
-			if (status == 200) {
-				InputStreamReader response = new InputStreamReader(conn.getInputStream());
-				BufferedReader reader = new BufferedReader(response);
-				String line;
-				StringBuilder sb = new StringBuilder();
-				while ((line = reader.readLine()) != null) {
-					sb.append(line);
-				}
-				return parser.parse(sb.toString());
-			} else {
-				throw new PKUHoleException(String.format("ʧ(%d): %s", status, conn.getResponseMessage()));
-			}
-		} catch (IOException e) {
-			throw new PKUHoleException("粻");
+			return parser.parse(new InputStreamReader(in, UTF_8));
+		} catch (JsonParseException e) {
+			throw new IOException(e);
 		}
 	}
 
@@ -147,106 +125,357 @@ public class PKUHoleAPI {
 		for (NameValuePair nvp : content) {
 			sb.append(nvp.getName()).append("=").append(nvp.getValue()).append("&");
 		}
-		return sb.substring(0, sb.length() - 1).getBytes(Charset.forName("utf-8"));
+		return sb.substring(0, sb.length() - 1).getBytes(UTF_8);
+	}
+
+	/**
+	 * Read a response of the form {"code":0, "msg":..., "data":...} straight
+	 * from the stream, handing every element of data to the consumer as soon as
+	 * it has been decoded. data may be either an array or a single object.
+	 * 
+	 * If data arrives before code, its elements are held back until code has
+	 * been checked, so the consumer never sees items of a failed request.
+	 * 
+	 * @return number of elements handed to the consumer, or -1 if data is absent
+	 *         or null
+	 */
+	private static <T> int readData(InputStream in, Class<T> clazz, Consumer<? super T> consumer)
+			throws IOException, PKUHoleException {
+		JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
+		// Same leniency as Gson.fromJson.
+		reader.setLenient(true);
+		TypeAdapter<T> adapter = gson.getAdapter(clazz);
+		Integer code = null;
+		String msg = null;
+		List<T> pending = null;
+		int count = -1;
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case "code":
+					code = reader.nextInt();
+					break;
+				case "msg":
+					msg = JsonUtils.nextString(reader);
+					break;
+				case "data":
+					if (reader.peek() == JsonToken.NULL) {
+						reader.nextNull();
+					} else if (code != null && code != 0) {
+						reader.skipValue();
+					} else {
+						if (code == null)
+							pending = new ArrayList<T>();
+						Consumer<? super T> sink = code == null ? pending::add : consumer;
+						count = 0;
+						if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+							reader.beginArray();
+							while (reader.hasNext()) {
+								if (Thread.currentThread().isInterrupted())
+									throw new PKUHoleException(IOExecutor.CANCELLED_MESSAGE);
+								sink.accept(adapter.read(reader));
+								count++;
+							}
+							reader.endArray();
+						} else {
+							sink.accept(adapter.read(reader));
+							count++;
+						}
+					}
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		} catch (IllegalStateException | JsonParseException e) {
+			throw new IOException(e);
+		}
+		if (code == null || code != 0)
+			throw new PKUHoleException(msg);
+		if (pending != null)
+			pending.forEach(consumer);
+		return count;
+	}
+
+	/**
+	 * Fetch a request whose data is a list (or a single object). Responses are
+	 * served from the cache when possible; otherwise the request goes through the
+	 * coalescer, so that identical requests in flight share one round trip and
+	 * one decoded result. The caller that performs the request gets the elements
+	 * as they are decoded; callers that joined it, or hit the cache, get them
+	 * replayed. Either way the consumer is called on an I/O thread.
+	 * 
+	 * The coalescing key carries the invalidation stamp of the cache key, so a
+	 * request made after the user changed the data never joins one made before,
+	 * and the response of the older one is not cached.
+	 * 
+	 * @param content
+	 *            POST content, or null to use GET
+	 * @return a future of what readData returns
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> CompletableFuture<Integer> getData(List<NameValuePair> nvp, List<NameValuePair> content,
+			Class<T> clazz, Consumer<? super T> consumer) {
+		String key = content == null ? requestKey(nvp) : requestKey(nvp) + "&" + requestKey(content);
+		DataList<T> data = (DataList<T>) responseCache.get(key, () -> fetchData(key, nvp, content, clazz, item -> {
+		}));
+		if (data == null)
+			return fetchData(key, nvp, content, clazz, consumer);
+		return IOExecutor.submit(() -> {
+			data.items.forEach(consumer);
+			return data.count;
+		});
+	}
+
+	private static <T> CompletableFuture<Integer> fetchData(String key, List<NameValuePair> nvp,
+			List<NameValuePair> content, Class<T> clazz, Consumer<? super T> consumer) {
+		long stamp = responseCache.getStamp(key);
+		boolean[] streamed = { false };
+		CompletableFuture<DataList<T>> future = coalescer.submit(key + "#" + stamp, () -> {
+			streamed[0] = true;
+			List<T> items = new ArrayList<T>();
+			HttpTransport.ResponseReader<Integer> reader = in -> readData(in, clazz, item -> {
+				items.add(item);
+				consumer.accept(item);
+			});
+			URI uri = buildURI(PKU_HOLE_API_PATH, nvp);
+			int count = content == null ? HttpTransport.get(uri, reader)
+					: HttpTransport.post(uri, formEntity(NVP2Bytes(content)), reader);
+			DataList<T> result = new DataList<T>(items, count);
+			cacheData(key, nvp, result, stamp);
+			return result;
+		});
+		return IOExecutor.map(future, data -> {
+			if (!streamed[0])
+				data.items.forEach(consumer);
+			return data.count;
+		});
+	}
+
+	/**
+	 * Put the response into the cache, with lifetimes depending on the action:
+	 * the first page changes all the time, deeper pages and quiet topics hardly
+	 * ever do.
+	 */
+	private static void cacheData(String key, List<NameValuePair> nvp, DataList<?> data, long stamp) {
+		long fresh, stale;
+		switch (nvp.get(0).getValue()) {
+		case "getlist":
+			if ("1".equals(nvp.get(1).getValue())) {
+				fresh = 15 * SECOND;
+				stale = 5 * MINUTE;
+			} else {
+				fresh = 2 * MINUTE;
+				stale = 30 * MINUTE;
+			}
+			break;
+		case "getone":
+		case "getcomment":
+			if (isQuiet(data)) {
+				fresh = 10 * MINUTE;
+				stale = 60 * MINUTE;
+			} else {
+				fresh = 30 * SECOND;
+				stale = 5 * MINUTE;
+			}
+			break;
+		case "search":
+			fresh = 1 * MINUTE;
+			stale = 10 * MINUTE;
+			break;
+		default:
+			return;
+		}
+		responseCache.put(key, data, stamp, fresh, stale);
+	}
+
+	/**
+	 * Whether the newest topic or comment in the data is more than a day old.
+	 */
+	private static boolean isQuiet(DataList<?> data) {
+		if (data.items.isEmpty())
+			return false;
+		long newest = 0;
+		for (Object item : data.items) {
+			if (item instanceof Topic)
+				newest = Math.max(newest, ((Topic) item).timestamp);
+			else if (item instanceof Comment)
+				newest = Math.max(newest, ((Comment) item).timestamp);
+		}
+		return System.currentTimeMillis() - newest * 1000 > QUIET_AGE;
+	}
+
+	private static String requestKey(List<NameValuePair> nvp) {
+		StringBuilder sb = new StringBuilder();
+		for (NameValuePair pair : nvp) {
+			if (sb.length() > 0)
+				sb.append('&');
+			sb.append(pair.getName()).append('=').append(pair.getValue());
+		}
+		return sb.toString();
+	}
+
+	private static String requestKey(String action, String name, Object value) {
+		return requestKey(Arrays.asList(pair("action", action), pair(name, String.valueOf(value))));
+	}
+
+	/**
+	 * 清除某页树洞的缓存，下次获取时从服务器重新加载
+	 */
+	public static void invalidateTopics(int page) {
+		responseCache.invalidate(requestKey("getlist", "p", page));
+	}
+
+	/**
+	 * 清除单个树洞及其评论的缓存，下次获取时从服务器重新加载
+	 */
+	public static void invalidateTopic(long pid) {
+		responseCache.invalidate(requestKey("getone", "pid", pid));
+		responseCache.invalidate(requestKey("getcomment", "pid", pid));
+	}
+
+	/**
+	 * 清除所有页树洞的缓存
+	 * 
+	 * Pages carry the reply and like counts of their topics.
+	 */
+	private static void invalidateAllTopics() {
+		responseCache.invalidatePrefix(requestKey("getlist", "p", ""));
+	}
+
+	private static class DataList<T> {
+
+		final List<T> items;
+		final int count;
+
+		DataList(List<T> items, int count) {
+			this.items = items;
+			this.count = count;
+		}
+
+	}
+
+	/**
+	 * 请求合并的统计信息
+	 */
+	public static RequestCoalescer getRequestCoalescer() {
+		return coalescer;
 	}
 
 	/**
-	 * ȡضҳ
+	 * Collect the streamed elements into an array, or null if data is absent.
+	 */
+	private static <T> T[] toArray(List<T> list, int count, T[] array) {
+		return count < 0 ? null : list.toArray(array);
+	}
+
+	/**
+	 * 获取特定页树洞，每解析出一条就交给consumer
+	 * 
+	 * @param page
+	 *            页号
+	 * @param consumer
+	 *            树洞接收者
+	 * @return 树洞数量，若服务器没有返回数据则为-1
+	 * @throws PKUHoleException
+	 */
+	public static int getTopics(int page, Consumer<? super Topic> consumer) throws PKUHoleException {
+		return IOExecutor.await(getTopicsAsync(page, consumer));
+	}
+
+	/**
+	 * 获取特定页树洞
 	 * 
 	 * @param page
-	 *            ҳ
-	 * @return б
+	 *            页号
+	 * @return 树洞列表
 	 * @throws PKUHoleException
 	 */
 	public static Topic[] getTopics(int page) throws PKUHoleException {
-		List<NameValuePair> nvp = Arrays.asList(pair("action", "getlist"), pair("p", page + ""));
-		JsonObject json = api(PKU_HOLE_API_PATH, nvp).getAsJsonObject();
-		if (json.get("code").getAsInt() != 0) {
-			throw new PKUHoleException(json.get("msg").getAsString());
-		}
-		JsonElement data = json.get("data");
-		if (data == null)
-			return null;
-		else
-			return gson.fromJson(data, Topic[].class);
+		return IOExecutor.await(getTopicsAsync(page));
 	}
 
 	/**
-	 * õ
+	 * 得到单个树洞
 	 * 
 	 * @param pid
-	 *            
-	 * @return 
+	 *            树洞号
+	 * @return 树洞内容
 	 * @throws PKUHoleException
 	 */
 	public static Topic getSingleTopic(int pid) throws PKUHoleException {
-		List<NameValuePair> nvp = Arrays.asList(pair("action", "getone"), pair("pid", pid + ""));
-		JsonObject json = api(PKU_HOLE_API_PATH, nvp).getAsJsonObject();
-		if (json.get("code").getAsInt() != 0) {
-			throw new PKUHoleException(json.get("msg").getAsString());
-		}
-		JsonElement data = json.get("data");
-		if (data == null)
-			return null;
-		else
-			return gson.fromJson(data, Topic.class);
+		return IOExecutor.await(getSingleTopicAsync(pid));
+	}
+
+	/**
+	 * 获取树洞评论，每解析出一条就交给consumer
+	 * 
+	 * @param pid
+	 *            树洞号
+	 * @param consumer
+	 *            评论接收者
+	 * @return 评论数量，若服务器没有返回数据则为-1
+	 * @throws PKUHoleException
+	 */
+	public static int getComments(int pid, Consumer<? super Comment> consumer) throws PKUHoleException {
+		return IOExecutor.await(getCommentsAsync(pid, consumer));
 	}
 
 	/**
-	 * ȡ
+	 * 获取树洞评论
 	 * 
 	 * @param pid
-	 *            
-	 * @return б
+	 *            树洞号
+	 * @return 评论列表
 	 * @throws PKUHoleException
 	 */
 	public static Comment[] getComments(int pid) throws PKUHoleException {
-		List<NameValuePair> nvp = Arrays.asList(pair("action", "getcomment"), pair("pid", pid + ""));
-		JsonObject json = api(PKU_HOLE_API_PATH, nvp).getAsJsonObject();
-		if (json.get("code").getAsInt() != 0) {
-			throw new PKUHoleException(json.get("msg").getAsString());
-		}
-		JsonElement data = json.get("data");
-		if (data == null)
-			return null;
-		else
-			return gson.fromJson(data, Comment[].class);
+		return IOExecutor.await(getCommentsAsync(pid));
 	}
 
 	/**
-	 * ضؼֵ
+	 * 搜索特定关键字的树洞，每解析出一条就交给consumer
 	 * 
 	 * @param keywords
-	 *            ؼ
+	 *            关键字
 	 * @param pageSize
-	 *            
-	 * @return б
+	 *            最大数量
+	 * @param consumer
+	 *            树洞接收者
+	 * @return 树洞数量，若服务器没有返回数据则为-1
+	 * @throws PKUHoleException
+	 */
+	public static int searchTopics(String keywords, int pageSize, Consumer<? super Topic> consumer)
+			throws PKUHoleException {
+		return IOExecutor.await(searchTopicsAsync(keywords, pageSize, consumer));
+	}
+
+	/**
+	 * 搜索特定关键字的树洞
+	 * 
+	 * @param keywords
+	 *            关键字
+	 * @param pageSize
+	 *            最大数量
+	 * @return 树洞列表
 	 * @throws PKUHoleException
 	 */
 	public static Topic[] searchTopics(String keywords, int pageSize) throws PKUHoleException {
-		List<NameValuePair> nvp = Arrays.asList(pair("action", "search"));
-		List<NameValuePair> content = Arrays.asList(pair("keywords", keywords), pair("pagesize", pageSize + ""));
-		JsonObject json = aqi(PKU_HOLE_API_PATH, nvp, content).getAsJsonObject();
-		if (json.get("code").getAsInt() != 0) {
-			throw new PKUHoleException(json.get("msg").getAsString());
-		}
-		JsonElement data = json.get("data");
-		if (data == null)
-			return null;
-		else
-			return gson.fromJson(data, Topic[].class);
+		return IOExecutor.await(searchTopicsAsync(keywords, pageSize));
 	}
 
 	// The following APIs are user-specified.
 
 	/**
-	 * ¼
+	 * 登录
 	 * 
 	 * @param uid
-	 *            ѧ
+	 *            学号
 	 * @param password
-	 *            
-	 * @return ûϢ
+	 *            密码
+	 * @return 用户信息
 	 * @throws PKUHoleException
 	 */
 	public static User login(String uid, String password) throws PKUHoleException {
@@ -260,35 +489,30 @@ public class PKUHoleAPI {
 	}
 
 	/**
-	 * ȡע
+	 * 获取关注话题
 	 * 
 	 * @param token
 	 *            token
-	 * @return עб
+	 * @return 关注树洞列表
 	 * @throws PKUHoleException
 	 */
 	public static Topic[] getAttentionTopics(String token) throws PKUHoleException {
 		List<NameValuePair> nvp = Arrays.asList(pair("action", "getattention"));
 		List<NameValuePair> content = Arrays.asList(pair("token", token));
-		JsonObject json = aqi(PKU_HOLE_API_PATH, nvp, content).getAsJsonObject();
-		if (json.get("code").getAsInt() != 0) {
-			throw new PKUHoleException(json.get("msg").getAsString());
-		}
-		JsonElement data = json.get("data");
-		if (data == null)
-			return null;
-		else
-			return gson.fromJson(data, Topic[].class);
+		List<Topic> topics = new ArrayList<Topic>();
+		int count = HttpTransport.post(buildURI(PKU_HOLE_API_PATH, nvp), formEntity(NVP2Bytes(content)),
+				in -> readData(in, Topic.class, topics::add));
+		return toArray(topics, count, new Topic[0]);
 	}
 
 	/**
-	 * 
+	 * 发表文字树洞
 	 * 
 	 * @param token
 	 *            token
 	 * @param text
-	 *            
-	 * @return ɹţʧܣ׳쳣
+	 *            树洞内容
+	 * @return 成功，返回树洞号；失败，抛出异常
 	 * @throws PKUHoleException
 	 */
 	public static int sendTextPost(String token, String text) throws PKUHoleException {
@@ -297,76 +521,47 @@ public class PKUHoleAPI {
 		JsonObject json = aqi(PKU_HOLE_API_PATH, nvp, content).getAsJsonObject();
 		if (json.get("code").getAsInt() != 0)
 			throw new PKUHoleException(json.get("msg").getAsString());
-		else
-			return json.get("data").getAsInt();
+		invalidateTopics(1);
+		return json.get("data").getAsInt();
 	}
 
 	/**
-	 * ͼƬ: ǵݵԣûaqiӿڣ粿ִд
+	 * 发表图片树洞: 考虑到数据的特殊性，没有用aqi接口，网络部分代码重写
 	 * 
 	 * @param token
 	 *            token
 	 * @param text
-	 *            
+	 *            树洞内容
 	 * @param image
+	 *            压缩后的图片，边编码边上传
+	 * @param listener
+	 *            上传进度，可为null
 	 * @throws PKUHoleException
 	 */
-	public static void sendImagePost(String token, String text, String image) throws PKUHoleException {
-		URL url;
-		try {
-			url = new URL("http://" + PKU_HOLE_HOST + PKU_HOLE_API_PATH + "?action=dopost");
-		} catch (MalformedURLException e) {
-			throw new PKUHoleException("Bad URL: " + e.getMessage());
-		}
-		List<NameValuePair> content = Arrays.asList(pair("token", token), pair("type", "image"), pair("text", text));
-		JsonObject json;
-		try {
-			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-			conn.setRequestMethod("POST");
-			conn.setRequestProperty("Host", PKU_HOLE_HOST);
-			conn.setRequestProperty("User-Agent", USER_AGENT);
-			conn.setRequestProperty("Content-type", "application/x-www-form-urlencoded");
-			conn.setDoOutput(true);
-			conn.setUseCaches(false);
-
-			OutputStream out = conn.getOutputStream();
-			out.write(NVP2Bytes(content));
-			out.write("&data=".getBytes());
-			out.write(image.getBytes());
-
-			out.flush();
-			out.close();
-
-			int status = conn.getResponseCode();
-			if (status == 200) {
-				InputStreamReader response = new InputStreamReader(conn.getInputStream());
-				BufferedReader reader = new BufferedReader(response);
-				String line;
-				StringBuilder sb = new StringBuilder();
-				while ((line = reader.readLine()) != null) {
-					sb.append(line);
-				}
-				json = (JsonObject) parser.parse(sb.toString());
-			} else {
-				throw new PKUHoleException(String.format("ʧ(%d): %s", status, conn.getResponseMessage()));
-			}
-		} catch (IOException e) {
-			throw new PKUHoleException("粻");
-		}
+	public static void sendImagePost(String token, String text, CompressedImage image, ProgressListener listener)
+			throws PKUHoleException {
+		List<NameValuePair> nvp = Arrays.asList(pair("action", "dopost"));
+		List<NameValuePair> content = Arrays.asList(pair("token", token), pair("type", "image"), pair("text", text),
+				pair("data", ""));
+		// The form ends with "data=", the image is appended while sending.
+		ImageFormEntity entity = new ImageFormEntity(NVP2Bytes(content), image, listener);
+		JsonObject json = HttpTransport.post(buildURI(PKU_HOLE_API_PATH, nvp), entity, PKUHoleAPI::parse)
+				.getAsJsonObject();
 		if (json.get("code").getAsInt() != 0)
 			throw new PKUHoleException(json.get("msg").getAsString());
+		invalidateTopics(1);
 	}
 
 	/**
-	 * 
+	 * 发表评论
 	 * 
 	 * @param token
 	 *            token
 	 * @param pid
-	 *            
+	 *            树洞号
 	 * @param text
-	 *            
-	 * @return ɹţʧܣ׳쳣
+	 *            评论内容
+	 * @return 成功，返回树洞号；失败，抛出异常
 	 * @throws PKUHoleException
 	 */
 	public static long sendComment(String token, long pid, String text) throws PKUHoleException {
@@ -375,19 +570,20 @@ public class PKUHoleAPI {
 		JsonObject json = aqi(PKU_HOLE_API_PATH, nvp, content).getAsJsonObject();
 		if (json.get("code").getAsInt() != 0)
 			throw new PKUHoleException(json.get("msg").getAsString());
-		else
-			return json.get("data").getAsLong();
+		invalidateTopic(pid);
+		invalidateAllTopics();
+		return json.get("data").getAsLong();
 	}
 
 	/**
-	 * ע
+	 * 设置树洞关注
 	 * 
 	 * @param token
 	 *            token
 	 * @param pid
-	 *            
+	 *            树洞号
 	 * @param attention
-	 *            Ƿע
+	 *            是否关注
 	 * @throws PKUHoleException
 	 */
 	public static void setAttention(String token, long pid, boolean attention) throws PKUHoleException {
@@ -397,18 +593,21 @@ public class PKUHoleAPI {
 		JsonObject json = aqi(PKU_HOLE_API_PATH, nvp, content).getAsJsonObject();
 		if (json.get("code").getAsInt() != 0)
 			throw new PKUHoleException(json.get("msg").getAsString());
+		// likenum of the topic has changed.
+		responseCache.invalidate(requestKey("getone", "pid", pid));
+		invalidateAllTopics();
 	}
 
 	/**
-	 * ٱ
+	 * 举报树洞
 	 * 
 	 * @param token
 	 *            token
 	 * @param pid
-	 *            
+	 *            树洞号
 	 * @param reason
-	 *            ٱ
-	 * @return Ƿɹ
+	 *            举报理由
+	 * @return 操作是否成功
 	 * @throws PKUHoleException
 	 */
 	public static boolean report(String token, long pid, String reason) throws PKUHoleException {
@@ -418,4 +617,86 @@ public class PKUHoleAPI {
 		JsonObject json = aqi(PKU_HOLE_API_PATH, nvp, content).getAsJsonObject();
 		return json.get("code").getAsInt() == 0;
 	}
+
+	// The following APIs are asynchronous counterparts of the ones above. They
+	// run on the I/O pool of IOExecutor, complete exceptionally with
+	// PKUHoleException, and can be cancelled with cancel(true). Consumers passed
+	// to the streaming variants are called on the I/O thread. The blocking
+	// list APIs above wait for these, so that identical requests share one
+	// round trip without holding a thread each.
+
+	public static CompletableFuture<Topic[]> getTopicsAsync(int page) {
+		List<Topic> topics = new ArrayList<Topic>();
+		return IOExecutor.map(getTopicsAsync(page, topics::add), count -> toArray(topics, count, new Topic[0]));
+	}
+
+	public static CompletableFuture<Integer> getTopicsAsync(int page, Consumer<? super Topic> consumer) {
+		List<NameValuePair> nvp = Arrays.asList(pair("action", "getlist"), pair("p", page + ""));
+		return getData(nvp, null, Topic.class, consumer);
+	}
+
+	public static CompletableFuture<Topic> getSingleTopicAsync(int pid) {
+		List<NameValuePair> nvp = Arrays.asList(pair("action", "getone"), pair("pid", pid + ""));
+		List<Topic> topics = new ArrayList<Topic>(1);
+		return IOExecutor.map(getData(nvp, null, Topic.class, topics::add),
+				count -> topics.isEmpty() ? null : topics.get(0));
+	}
+
+	public static CompletableFuture<Comment[]> getCommentsAsync(int pid) {
+		List<Comment> comments = new ArrayList<Comment>();
+		return IOExecutor.map(getCommentsAsync(pid, comments::add), count -> toArray(comments, count, new Comment[0]));
+	}
+
+	public static CompletableFuture<Integer> getCommentsAsync(int pid, Consumer<? super Comment> consumer) {
+		List<NameValuePair> nvp = Arrays.asList(pair("action", "getcomment"), pair("pid", pid + ""));
+		return getData(nvp, null, Comment.class, consumer);
+	}
+
+	public static CompletableFuture<Topic[]> searchTopicsAsync(String keywords, int pageSize) {
+		List<Topic> topics = new ArrayList<Topic>();
+		return IOExecutor.map(searchTopicsAsync(keywords, pageSize, topics::add),
+				count -> toArray(topics, count, new Topic[0]));
+	}
+
+	public static CompletableFuture<Integer> searchTopicsAsync(String keywords, int pageSize,
+			Consumer<? super Topic> consumer) {
+		List<NameValuePair> nvp = Arrays.asList(pair("action", "search"));
+		List<NameValuePair> content = Arrays.asList(pair("keywords", keywords), pair("pagesize", pageSize + ""));
+		return getData(nvp, content, Topic.class, consumer);
+	}
+
+	public static CompletableFuture<User> loginAsync(String uid, String password) {
+		return IOExecutor.submit(() -> login(uid, password));
+	}
+
+	public static CompletableFuture<Topic[]> getAttentionTopicsAsync(String token) {
+		return IOExecutor.submit(() -> getAttentionTopics(token));
+	}
+
+	public static CompletableFuture<Integer> sendTextPostAsync(String token, String text) {
+		return IOExecutor.submit(() -> sendTextPost(token, text));
+	}
+
+	public static CompletableFuture<Void> sendImagePostAsync(String token, String text, CompressedImage image,
+			ProgressListener listener) {
+		return IOExecutor.submit(() -> {
+			sendImagePost(token, text, image, listener);
+			return null;
+		});
+	}
+
+	public static CompletableFuture<Long> sendCommentAsync(String token, long pid, String text) {
+		return IOExecutor.submit(() -> sendComment(token, pid, text));
+	}
+
+	public static CompletableFuture<Void> setAttentionAsync(String token, long pid, boolean attention) {
+		return IOExecutor.submit(() -> {
+			setAttention(token, pid, attention);
+			return null;
+		});
+	}
+
+	public static CompletableFuture<Boolean> reportAsync(String token, long pid, String reason) {
+		return IOExecutor.submit(() -> report(token, pid, reason));
+	}
 }
@@ -0,0 +1,19 @@
+package com.lyl.pkuhole.exception;
+
+/**
+ * 服务器返回了200以外的状态码。
+ */
+public class HttpStatusException extends PKUHoleException {
+
+	private final int statusCode;
+
+	public HttpStatusException(int statusCode, String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+}
@@ -0,0 +1,12 @@
+package com.lyl.pkuhole.exception;
+
+/**
+ * 图片数据损坏，无法解码。
+ */
+public class ImageDecodeException extends PKUHoleException {
+
+	public ImageDecodeException(String message) {
+		super(message);
+	}
+
+}
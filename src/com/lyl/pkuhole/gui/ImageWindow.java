@@ -2,39 +2,139 @@ package com.lyl.pkuhole.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.CompletableFuture;
 
-import javax.swing.ImageIcon;
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JScrollPane;
+import javax.swing.KeyStroke;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+import com.lyl.pkuhole.exception.ImageDecodeException;
+import com.lyl.pkuhole.image.ImageLoader;
+import com.lyl.pkuhole.network.IOExecutor;
+import com.lyl.pkuhole.widgets.TiledImageView;
 
 public class ImageWindow extends JFrame {
 
-	private ImageIcon icon;
+	private static final Dimension LOADING_SIZE = new Dimension(300, 200);
+	// Share of the screen the window may take at most.
+	private static final double MAX_SCREEN_RATIO = 0.8;
+
+	private String path;
+	private CompletableFuture<byte[]> request;
 
 	private JLabel label;
 	private JScrollPane scrollPane;
+	private TiledImageView view;
 
-	public ImageWindow(ImageIcon icon) {
-		this.icon = icon;
+	/**
+	 * @param path
+	 *            图片在服务器上的路径，打开窗口时才读取原图；只解码显示到的部分
+	 */
+	public ImageWindow(String path) {
+		this.path = path;
 	}
 
 	public void init() {
-		Dimension size = new Dimension(icon.getIconWidth(), icon.getIconHeight());
-		label = new JLabel();
-		label.setIcon(icon);
-		label.setPreferredSize(size);
+		label = new JLabel("图片加载中...");
+		label.setHorizontalAlignment(SwingConstants.CENTER);
+		label.setPreferredSize(LOADING_SIZE);
 		scrollPane = new JScrollPane(label);
 		scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
 		scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
-		scrollPane.getVerticalScrollBar().setUnitIncrement(20);
 		setLayout(new BorderLayout());
 		add(scrollPane, BorderLayout.CENTER);
-		setTitle("鿴ͼƬ");
+		setTitle("查看图片");
 		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 		pack();
 		setVisible(true);
+		request = IOExecutor.submit(() -> ImageLoader.loadData(path));
+		request.whenComplete((data, e) -> SwingUtilities.invokeLater(() -> {
+			if (request == null || request.isCancelled())
+				return;
+			if (data == null) {
+				label.setText("图片加载失败！原因：" + IOExecutor.unwrap(e).getMessage());
+				return;
+			}
+			try {
+				showImage(data);
+			} catch (ImageDecodeException ex) {
+				label.setText("图片加载失败！原因：" + ex.getMessage());
+			}
+		}));
+	}
+
+	private void showImage(byte[] data) throws ImageDecodeException {
+		view = new TiledImageView(data, path);
+		Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+		Dimension max = new Dimension((int) (screen.width * MAX_SCREEN_RATIO),
+				(int) (screen.height * MAX_SCREEN_RATIO));
+		view.setZoomLevel(view.getFitZoomLevel(max), null);
+		scrollPane.setViewportView(view);
+		// Ctrl + wheel zooms around the mouse, the wheel alone scrolls.
+		view.addMouseWheelListener(e -> {
+			if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) == 0) {
+				scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(view, e, scrollPane));
+				return;
+			}
+			zoom(e.getWheelRotation() < 0 ? 1 : -1, e.getPoint());
+		});
+		bindZoomKey(KeyEvent.VK_EQUALS, 1);
+		bindZoomKey(KeyEvent.VK_ADD, 1);
+		bindZoomKey(KeyEvent.VK_MINUS, -1);
+		bindZoomKey(KeyEvent.VK_SUBTRACT, -1);
+		Dimension size = view.getPreferredSize();
+		scrollPane.setPreferredSize(new Dimension(Math.min(size.width, max.width) + 4,
+				Math.min(size.height, max.height) + 4));
+		updateTitle();
+		pack();
+	}
+
+	private void bindZoomKey(int keyCode, int delta) {
+		String name = "zoom" + keyCode;
+		view.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(keyCode, 0), name);
+		view.getActionMap().put(name, new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				zoom(delta, null);
+			}
+		});
+	}
+
+	private void zoom(int delta, Point anchor) {
+		view.setZoomLevel(view.getZoomLevel() + delta, anchor);
+		updateTitle();
+	}
+
+	private void updateTitle() {
+		setTitle(String.format("查看图片 (%d×%d, %d%%)", view.getImageWidth(), view.getImageHeight(),
+				Math.round(view.getZoom() * 100)));
+	}
+
+	/**
+	 * Only the tiles of the view hold pixels, so dropping it releases them.
+	 */
+	@Override
+	public void dispose() {
+		if (request != null) {
+			request.cancel(true);
+			request = null;
+		}
+		if (view != null) {
+			view.dispose();
+			view = null;
+		}
+		super.dispose();
 	}
 
 }
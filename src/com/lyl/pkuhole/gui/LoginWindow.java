@@ -29,7 +29,7 @@ public class LoginWindow extends JDialog {
 	private JPanel userNamePanel, passwordPanel, buttonPanel;
 
 	public LoginWindow() {
-		super((JFrame) null, "û¼", true);
+		super((JFrame) null, "用户登录", true);
 	}
 
 	public void init() {
@@ -42,15 +42,15 @@ public class LoginWindow extends JDialog {
 	}
 
 	private void initComponent() {
-		userNameHint = new JLabel("ѧţ");
-		passwordHint = new JLabel("룺");
+		userNameHint = new JLabel("学号：");
+		passwordHint = new JLabel("密码：");
 
 		userName = new JTextField(20);
 		password = new JPasswordField(20);
-		password.setEchoChar('');
+		password.setEchoChar('●');
 
-		confirm = new JButton("¼");
-		cancel = new JButton("ȡ");
+		confirm = new JButton("登录");
+		cancel = new JButton("取消");
 	}
 
 	private void initLayout() {
@@ -96,11 +96,11 @@ public class LoginWindow extends JDialog {
 			String userName = this.userName.getText();
 			String password = new String(this.password.getPassword());
 			if (TextUtils.isEmpty(userName)) {
-				UIUtils.messageBox("ѧţ");
+				UIUtils.messageBox("请输入学号！");
 				return;
 			}
 			if (TextUtils.isEmpty(password)) {
-				UIUtils.messageBox("룡");
+				UIUtils.messageBox("请输入密码！");
 				return;
 			}
 			try {
@@ -110,7 +110,7 @@ public class LoginWindow extends JDialog {
 				PKUHole.getInstance().notifyUserChanged();
 				dispose();
 			} catch (PKUHoleException err) {
-				UIUtils.messageBox("¼ʧܣԭ" + err.getMessage());
+				UIUtils.messageBox("登录失败！原因：" + err.getMessage());
 			}
 		});
 		cancel.addActionListener(e -> {
@@ -24,7 +24,7 @@ public class MainWindow extends JFrame implements Observer {
 
 	private Component[] tabs;
 
-	private static final String[] tabNames = new String[] { "", "", "ע", "", "û" };
+	private static final String[] tabNames = new String[] { "发表", "树洞", "关注", "搜索", "用户" };
 
 	public void init() {
 		PKUHole.getInstance().addObserver(this);
@@ -77,11 +77,11 @@ public class MainWindow extends JFrame implements Observer {
 			tabbedPane.setEnabledAt(2, false);
 			tabs[0] = null;
 			tabs[2] = null;
-			setTitle("P - ο");
+			setTitle("P大树洞 - 游客");
 		} else {
 			tabbedPane.setEnabledAt(0, true);
 			tabbedPane.setEnabledAt(2, true);
-			setTitle(String.format("P - %s[%s]", user.name, user.department));
+			setTitle(String.format("P大树洞 - %s[%s]", user.name, user.department));
 		}
 	}
 
@@ -7,12 +7,14 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.function.Consumer;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
-import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -23,15 +25,15 @@ import org.apache.http.util.TextUtils;
 
 import com.lyl.pkuhole.PKUHole;
 import com.lyl.pkuhole.PKUHoleAPI;
-import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.image.NegativeImageCache;
 import com.lyl.pkuhole.model.AttentionManager;
 import com.lyl.pkuhole.model.Comment;
 import com.lyl.pkuhole.model.Topic;
 import com.lyl.pkuhole.model.User;
 import com.lyl.pkuhole.utils.UIUtils;
-import com.lyl.pkuhole.widgets.CommentCell;
-import com.lyl.pkuhole.widgets.TopicCell;
-import com.lyl.pkuhole.widgets.TopicCellWithImage;
+import com.lyl.pkuhole.utils.ViewLoader;
+import com.lyl.pkuhole.widgets.BusyIndicator;
+import com.lyl.pkuhole.widgets.HoleCellFactory;
 import com.lyl.pkuhole.widgets.VerticalList;
 
 public class TopicWindow extends JFrame implements Observer {
@@ -43,11 +45,13 @@ public class TopicWindow extends JFrame implements Observer {
 	private JCheckBox attention;
 	// Panel for header
 	private JPanel header;
-	// TopicCell
-	private JComponent topicCell;
-	// VerticalList for comments
+	// VerticalList for the topic followed by its comments
 	private VerticalList commentList;
+	private HoleCellFactory cellFactory;
 	private JScrollPane scrollPane;
+	// Background loaders
+	private BusyIndicator busy;
+	private ViewLoader topicLoader, commentLoader, reportLoader, attentionLoader, sendLoader;
 
 	public TopicWindow(Topic topic) {
 		this.topic = topic;
@@ -65,25 +69,33 @@ public class TopicWindow extends JFrame implements Observer {
 			@Override
 			public void windowClosing(WindowEvent e) {
 				PKUHole.getInstance().deleteObserver(TopicWindow.this);
+				topicLoader.cancel();
+				commentLoader.cancel();
 			}
 		});
 		setMinimumSize(new Dimension(1000, 600));
 		setPreferredSize(new Dimension(1000, 800));
-		setTitle("#" + topic.pid);
+		setTitle("树洞#" + topic.pid);
 		pack();
 		setVisible(true);
 	}
 
 	private void initComponent() {
-		refresh = new JButton("ˢ");
-		report = new JButton("ٱ");
-		comment = new JButton("");
-		attention = new JCheckBox("ע");
+		refresh = new JButton("刷新");
+		report = new JButton("举报");
+		comment = new JButton("评论");
+		attention = new JCheckBox("关注");
+		busy = new BusyIndicator();
+		topicLoader = new ViewLoader(busy);
+		commentLoader = new ViewLoader(busy);
+		reportLoader = new ViewLoader(busy);
+		attentionLoader = new ViewLoader(busy);
+		sendLoader = new ViewLoader(busy);
 		if (PKUHole.getInstance().user != null)
 			attention.setSelected(AttentionManager.isAttention(topic.pid));
 
-		topicCell = topic.getCell(false);
 		commentList = new VerticalList();
+		cellFactory = new HoleCellFactory(false);
 	}
 
 	private void initLayout() {
@@ -106,6 +118,11 @@ public class TopicWindow extends JFrame implements Observer {
 		gb.setConstraints(blank, gbc);
 		header.add(blank);
 		gbc.weightx = 0;
+		// BusyIndicator busy
+		gbc.anchor = GridBagConstraints.EAST;
+		gbc.insets = new Insets(0, 0, 0, 40);
+		gb.setConstraints(busy, gbc);
+		header.add(busy);
 		// JButton report
 		gbc.anchor = GridBagConstraints.EAST;
 		gbc.insets = new Insets(0, 0, 0, 40);
@@ -128,6 +145,8 @@ public class TopicWindow extends JFrame implements Observer {
 
 	private void initEvent() {
 		refresh.addActionListener(e -> {
+			PKUHoleAPI.invalidateTopic(topic.pid);
+			NegativeImageCache.clearTransient();
 			refreshTopic();
 			loadPage();
 		});
@@ -141,17 +160,16 @@ public class TopicWindow extends JFrame implements Observer {
 			comment(null);
 		});
 		commentList.setActionListener(e -> {
-			JComponent c = commentList.getSelectedJComponent();
-			if (c instanceof CommentCell)
-				comment(((CommentCell) c).getComment().name);
+			Object item = commentList.getSelectedItem();
+			if (item instanceof Comment)
+				comment(((Comment) item).name);
 			else
 				comment(null);
 		});
 	}
 
 	private void refreshTopic() {
-		try {
-			Topic newTopic = PKUHoleAPI.getSingleTopic(topic.pid);
+		topicLoader.load(PKUHoleAPI.getSingleTopicAsync(topic.pid), newTopic -> {
 			/**
 			 * Possibilities are that this topic is deleted and getSingleTopic returns null.
 			 * In this case, use the previous version of information and warn the user.
@@ -159,57 +177,68 @@ public class TopicWindow extends JFrame implements Observer {
 			if (newTopic != null) {
 				topic.likenum = newTopic.likenum;
 				topic.reply = newTopic.reply;
-				if (topicCell instanceof TopicCell) {
-					((TopicCell) topicCell).refresh();
-				} else {
-					((TopicCellWithImage) topicCell).refresh();
-				}
 				attention.setSelected(AttentionManager.isAttention(topic.pid));
 			} else {
-				setTitle("#" + topic.pid + "[:ѱɾ]");
-			}
-			if (topicCell instanceof TopicCell) {
-				((TopicCell) topicCell).refresh();
-			} else {
-				((TopicCellWithImage) topicCell).refresh();
+				setTitle("树洞#" + topic.pid + "[警告:本条树洞已被删除！]");
 			}
-		} catch (PKUHoleException e) {
-			UIUtils.messageBox("ʧܣԭ" + e.getMessage());
-		}
+			// The topic is the first item of the list.
+			commentList.updateItem(0);
+		}, e -> {
+			UIUtils.messageBox("操作失败，原因：" + e.getMessage());
+		});
 	}
 
+	/**
+	 * 在后台加载评论。Comments are collected as they arrive and the list is
+	 * updated once all of them are there; comments already on display keep
+	 * their cells, and the list stays where it was scrolled to.
+	 */
 	private void loadPage() {
-		try {
-			Comment[] comments = PKUHoleAPI.getComments(topic.pid);
-			commentList.removeAll();
-			commentList.addItem(topicCell);
-			for (Comment comment : comments) {
-				commentList.addItem(new CommentCell(comment));
-			}
-			commentList.commit();
-		} catch (PKUHoleException e) {
-			UIUtils.messageBox("ԭ" + e.getMessage());
-		}
+		List<Comment> comments = new ArrayList<Comment>();
+		// Comments are laid out as they arrive, on the I/O thread, so that long
+		// threads reach the list already measured.
+		Consumer<Comment> measurer = cellFactory.commentMeasurer(commentList.getWidth());
+		commentLoader.<Comment, Integer>stream(consumer -> PKUHoleAPI.getCommentsAsync(topic.pid, comment -> {
+			measurer.accept(comment);
+			consumer.accept(comment);
+		}),
+				comment -> {
+					comments.add(comment);
+				}, count -> {
+					showComments(comments);
+				}, e -> {
+					showComments(comments);
+					UIUtils.messageBox("发生错误，原因：" + e.getMessage());
+				});
+	}
+
+	private void showComments(List<Comment> comments) {
+		List<Object> items = new ArrayList<Object>(comments.size() + 1);
+		items.add(topic);
+		items.addAll(comments);
+		commentList.updateItems(items, cellFactory);
 	}
 
 	private void report() {
 		User user = PKUHole.getInstance().user;
 		if (user == null) {
 			// If invalidateUser() works properly, control should never reach here.
-			UIUtils.messageBox("ʧܣȵ¼");
+			UIUtils.messageBox("操作失败，请先登录！");
 			return;
 		}
-		String reason = UIUtils.inputBox("ٱɣ", "", "ٱ");
+		String reason = UIUtils.inputBox("请输入举报理由：", "", "举报");
 		if (reason != null)
 			reason = reason.trim();
 		if (TextUtils.isEmpty(reason)) {
-			UIUtils.messageBox("ٱʧܣɲΪգ");
+			UIUtils.messageBox("举报失败：理由不能为空！");
 		} else {
-			try {
-				PKUHoleAPI.report(user.token, topic.pid, reason);
-			} catch (PKUHoleException e) {
-				UIUtils.messageBox("ʧܣԭ" + e.getMessage());
-			}
+			report.setEnabled(false);
+			reportLoader.load(PKUHoleAPI.reportAsync(user.token, topic.pid, reason), result -> {
+				report.setEnabled(true);
+			}, e -> {
+				report.setEnabled(true);
+				UIUtils.messageBox("操作失败！原因：" + e.getMessage());
+			});
 		}
 	}
 
@@ -226,47 +255,53 @@ public class TopicWindow extends JFrame implements Observer {
 		User user = PKUHole.getInstance().user;
 		if (user == null) {
 			// If invalidateUser() works properly, control should never reach here.
-			UIUtils.messageBox("ʧܣȵ¼");
+			UIUtils.messageBox("操作失败，请先登录！");
 			return;
 		}
-		try {
-			PKUHoleAPI.setAttention(user.token, topic.pid, selected);
+		attention.setEnabled(false);
+		attentionLoader.load(PKUHoleAPI.setAttentionAsync(user.token, topic.pid, selected), result -> {
+			attention.setEnabled(true);
 			if (selected)
 				AttentionManager.addAttentionTopic(topic);
 			else
 				AttentionManager.removeAttentionTopic(topic.pid);
-		} catch (PKUHoleException e) {
-			UIUtils.messageBox("ʧܣԭ" + e.getMessage());
-			if (e.getMessage().startsWith("Ѿע")) {
+		}, e -> {
+			attention.setEnabled(true);
+			UIUtils.messageBox("操作失败，原因：" + e.getMessage());
+			if (e.getMessage() != null && e.getMessage().startsWith("已经关注")) {
 				attention.setSelected(true);
 				AttentionManager.addAttentionTopic(topic);
 			}
-		}
+		});
 	}
 
 	public void comment(String name) {
+		if (sendLoader.isLoading())
+			return;
 		User user = PKUHole.getInstance().user;
 		if (user == null) {
-			UIUtils.messageBox("ʧܣȵ¼");
+			UIUtils.messageBox("评论失败，请先登录！");
 			return;
 		}
-		String content = UIUtils.inputBox("ݣ", name == null || name == "¥" ? "" : "Re " + name + ":", "");
+		String content = UIUtils.inputBox("请输入评论内容：", name == null || name == "楼主" ? "" : "Re " + name + ":", "评论树洞");
 		if (content == null)
 			return;
 		content = content.trim();
 		if (TextUtils.isEmpty(content)) {
-			UIUtils.messageBox("ݣ");
+			UIUtils.messageBox("请输入内容！");
 			return;
 		}
-		try {
-			PKUHoleAPI.sendComment(user.token, topic.pid, content);
+		comment.setEnabled(false);
+		sendLoader.load(PKUHoleAPI.sendCommentAsync(user.token, topic.pid, content), cid -> {
+			comment.setEnabled(true);
 			refreshTopic();
 			loadPage();
 			attention.setSelected(true);
 			AttentionManager.addAttentionTopic(topic);
-		} catch (PKUHoleException e) {
-			UIUtils.messageBox("ʧܣԭ" + e.getMessage());
-		}
+		}, e -> {
+			comment.setEnabled(true);
+			UIUtils.messageBox("评论失败！原因：" + e.getMessage());
+		});
 
 	}
 
@@ -0,0 +1,29 @@
+package com.lyl.pkuhole.image;
+
+/**
+ * 压缩后待上传的图片。
+ */
+public class CompressedImage {
+
+	/**
+	 * Encoded image, in format.
+	 */
+	public final byte[] data;
+	/**
+	 * "jpeg" or "png".
+	 */
+	public final String format;
+	public final int width, height;
+	public final int originalWidth, originalHeight;
+
+	public CompressedImage(byte[] data, String format, int width, int height, int originalWidth,
+			int originalHeight) {
+		this.data = data;
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.originalWidth = originalWidth;
+		this.originalHeight = originalHeight;
+	}
+
+}
@@ -0,0 +1,310 @@
+package com.lyl.pkuhole.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 图片的本地持久化存储，保存从服务器下载的原始图片数据。
+ *
+ * Images are appended to a few large segment files used as a ring: when the
+ * current segment is full the oldest one is cleared and reused, which bounds
+ * the size of the store and evicts the oldest images first. An index file maps
+ * the 64-bit hash of the key to the segment, offset and length of the image in
+ * an open-addressing table. Both the index and the segments are memory-mapped,
+ * so a lookup on a warm cache is a few reads from mapped memory.
+ *
+ * Nothing here is ever trusted blindly, so a crash at any point can cost
+ * images but never return wrong ones: every record in a segment carries its
+ * key and a CRC that are checked on lookup, and every index slot names the
+ * generation of the segment it points to, which changes whenever the segment
+ * is reused.
+ *
+ * Only one process can use a directory at a time. All methods are thread-safe.
+ */
+public class DiskImageStore {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int SEGMENT_COUNT = 8;
+	private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+	// Must be a power of 2.
+	private static final int SLOT_COUNT = 1 << 16;
+	private static final int MAX_PROBE = 32;
+
+	private static final int INDEX_MAGIC = 0x504b4849; // "PKHI"
+	private static final int SEGMENT_MAGIC = 0x504b4853; // "PKHS"
+	private static final int RECORD_MAGIC = 0x504b4852; // "PKHR"
+	private static final int VERSION = 1;
+
+	/*
+	 * Index header: magic, version, slot count, segment count, segment size,
+	 * current segment, write offset (ints), next generation (long).
+	 */
+	private static final int INDEX_HEADER_SIZE = 64;
+	private static final int H_CURRENT_SEGMENT = 20;
+	private static final int H_WRITE_OFFSET = 24;
+	private static final int H_NEXT_GENERATION = 28;
+	/*
+	 * Slot: hash (0 if empty), generation (longs), segment, offset, length,
+	 * reserved (ints).
+	 */
+	private static final int SLOT_SIZE = 32;
+	/*
+	 * Segment header: magic, reserved (ints), generation (long).
+	 */
+	private static final int SEGMENT_HEADER_SIZE = 16;
+	/*
+	 * Record: magic, key length, data length, CRC of key and data (ints), key,
+	 * data.
+	 */
+	private static final int RECORD_HEADER_SIZE = 16;
+
+	private static DiskImageStore instance;
+	private static boolean opened;
+
+	private final FileLock lock;
+	private final MappedByteBuffer index;
+	private final MappedByteBuffer[] segments = new MappedByteBuffer[SEGMENT_COUNT];
+	private final long[] generations = new long[SEGMENT_COUNT];
+
+	private long hitCount, missCount;
+
+	/**
+	 * The store in ~/.pkuhole/images, opened on first use.
+	 *
+	 * @return the store, or null if it can't be used (e.g. the directory isn't
+	 *         writable, or another client is using it)
+	 */
+	public static synchronized DiskImageStore getDefault() {
+		if (!opened) {
+			opened = true;
+			try {
+				instance = new DiskImageStore(new File(System.getProperty("user.home"), ".pkuhole/images"));
+			} catch (IOException e) {
+				instance = null;
+			}
+		}
+		return instance;
+	}
+
+	public DiskImageStore(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create " + dir);
+		FileChannel indexChannel = new RandomAccessFile(new File(dir, "index.dat"), "rw").getChannel();
+		lock = indexChannel.tryLock();
+		if (lock == null) {
+			indexChannel.close();
+			throw new IOException(dir + " is in use");
+		}
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+				INDEX_HEADER_SIZE + (long) SLOT_COUNT * SLOT_SIZE);
+		boolean valid = index.getInt(0) == INDEX_MAGIC && index.getInt(4) == VERSION
+				&& index.getInt(8) == SLOT_COUNT && index.getInt(12) == SEGMENT_COUNT
+				&& index.getInt(16) == SEGMENT_SIZE;
+		if (!valid) {
+			// New, or written by a different version: start over.
+			for (int i = 0; i < index.capacity(); i += 8)
+				index.putLong(i, 0);
+			index.putInt(4, VERSION);
+			index.putInt(8, SLOT_COUNT);
+			index.putInt(12, SEGMENT_COUNT);
+			index.putInt(16, SEGMENT_SIZE);
+			index.putLong(H_NEXT_GENERATION, 1);
+			index.putInt(0, INDEX_MAGIC);
+		}
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			try (FileChannel channel = new RandomAccessFile(new File(dir, "segment" + i + ".dat"), "rw")
+					.getChannel()) {
+				segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+			}
+			if (valid && segments[i].getInt(0) == SEGMENT_MAGIC) {
+				generations[i] = segments[i].getLong(8);
+			} else {
+				// Generation 0 is never used by a slot, so nothing points here.
+				segments[i].putInt(0, SEGMENT_MAGIC);
+				segments[i].putLong(8, 0);
+			}
+		}
+		int current = index.getInt(H_CURRENT_SEGMENT);
+		int offset = index.getInt(H_WRITE_OFFSET);
+		if (!valid || current < 0 || current >= SEGMENT_COUNT || generations[current] == 0
+				|| offset < SEGMENT_HEADER_SIZE || offset > SEGMENT_SIZE)
+			startSegment(current < 0 || current >= SEGMENT_COUNT ? 0 : current);
+	}
+
+	/**
+	 * @return the stored data, or null
+	 */
+	public synchronized byte[] get(String key) {
+		byte[] keyBytes = key.getBytes(UTF_8);
+		long hash = hash(keyBytes);
+		for (int i = 0, slot = home(hash); i < MAX_PROBE; i++, slot = next(slot)) {
+			long slotHash = index.getLong(slot);
+			if (slotHash == 0)
+				break;
+			if (slotHash != hash)
+				continue;
+			byte[] data = read(slot, keyBytes);
+			if (data != null) {
+				hitCount++;
+				return data;
+			}
+		}
+		missCount++;
+		return null;
+	}
+
+	public synchronized void put(String key, byte[] data) {
+		byte[] keyBytes = key.getBytes(UTF_8);
+		int size = RECORD_HEADER_SIZE + keyBytes.length + data.length;
+		if (size > SEGMENT_SIZE - SEGMENT_HEADER_SIZE)
+			return;
+		int current = index.getInt(H_CURRENT_SEGMENT);
+		int offset = index.getInt(H_WRITE_OFFSET);
+		if (offset + size > SEGMENT_SIZE) {
+			current = (current + 1) % SEGMENT_COUNT;
+			startSegment(current);
+			offset = SEGMENT_HEADER_SIZE;
+		}
+		// The record first, then the index, so the index never points at nothing.
+		ByteBuffer segment = segments[current].duplicate();
+		segment.position(offset);
+		segment.putInt(RECORD_MAGIC).putInt(keyBytes.length).putInt(data.length).putInt(crc(keyBytes, data));
+		segment.put(keyBytes).put(data);
+		index.putInt(H_WRITE_OFFSET, offset + size);
+
+		long hash = hash(keyBytes);
+		int target = home(hash);
+		for (int i = 0, slot = target; i < MAX_PROBE; i++, slot = next(slot)) {
+			long slotHash = index.getLong(slot);
+			if (slotHash == 0 || slotHash == hash || !isLive(slot)) {
+				target = slot;
+				break;
+			}
+		}
+		// Clear the hash first: a slot is only valid once it is written completely.
+		index.putLong(target, 0);
+		index.putLong(target + 8, generations[current]);
+		index.putInt(target + 16, current);
+		index.putInt(target + 20, offset);
+		index.putInt(target + 24, data.length);
+		index.putLong(target, hash);
+	}
+
+	/**
+	 * Forget the key, e.g. because the stored data turned out to be useless.
+	 */
+	public synchronized void remove(String key) {
+		byte[] keyBytes = key.getBytes(UTF_8);
+		long hash = hash(keyBytes);
+		for (int i = 0, slot = home(hash); i < MAX_PROBE; i++, slot = next(slot)) {
+			long slotHash = index.getLong(slot);
+			if (slotHash == 0)
+				break;
+			// Keep the slot occupied so that probing goes on past it.
+			if (slotHash == hash && read(slot, keyBytes) != null)
+				index.putLong(slot + 8, 0);
+		}
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("DiskImageStore[segment=%d, offset=%d, hits=%d, misses=%d]",
+				index.getInt(H_CURRENT_SEGMENT), index.getInt(H_WRITE_OFFSET), hitCount, missCount);
+	}
+
+	/**
+	 * Clear the segment for reuse by giving it a new generation, which
+	 * invalidates every slot that points into it.
+	 */
+	private void startSegment(int segment) {
+		long generation = index.getLong(H_NEXT_GENERATION);
+		index.putLong(H_NEXT_GENERATION, generation + 1);
+		segments[segment].putLong(8, generation);
+		generations[segment] = generation;
+		index.putInt(H_CURRENT_SEGMENT, segment);
+		index.putInt(H_WRITE_OFFSET, SEGMENT_HEADER_SIZE);
+	}
+
+	private boolean isLive(int slot) {
+		int segment = index.getInt(slot + 16);
+		return segment >= 0 && segment < SEGMENT_COUNT && generations[segment] != 0
+				&& index.getLong(slot + 8) == generations[segment];
+	}
+
+	/**
+	 * Read and check the record the slot points to.
+	 *
+	 * @return the data, or null if the slot is stale or the record is not the
+	 *         one expected
+	 */
+	private byte[] read(int slot, byte[] key) {
+		if (!isLive(slot))
+			return null;
+		int segment = index.getInt(slot + 16);
+		int offset = index.getInt(slot + 20);
+		int length = index.getInt(slot + 24);
+		if (offset < SEGMENT_HEADER_SIZE || length < 0
+				|| (long) offset + RECORD_HEADER_SIZE + key.length + length > SEGMENT_SIZE)
+			return null;
+		ByteBuffer buffer = segments[segment].duplicate();
+		buffer.position(offset);
+		if (buffer.getInt() != RECORD_MAGIC || buffer.getInt() != key.length || buffer.getInt() != length)
+			return null;
+		int crc = buffer.getInt();
+		byte[] storedKey = new byte[key.length];
+		buffer.get(storedKey);
+		if (!Arrays.equals(storedKey, key))
+			return null;
+		byte[] data = new byte[length];
+		buffer.get(data);
+		if (crc(key, data) != crc)
+			return null;
+		return data;
+	}
+
+	private static int home(long hash) {
+		return INDEX_HEADER_SIZE + (int) (hash & (SLOT_COUNT - 1)) * SLOT_SIZE;
+	}
+
+	private static int next(int slot) {
+		slot += SLOT_SIZE;
+		return slot == INDEX_HEADER_SIZE + SLOT_COUNT * SLOT_SIZE ? INDEX_HEADER_SIZE : slot;
+	}
+
+	/**
+	 * 64-bit FNV-1a, never 0.
+	 */
+	private static long hash(byte[] key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	private static int crc(byte[] key, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(key);
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.lyl.pkuhole.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内共享的图片缓存。
+ *
+ * Decoded images keyed by their path on the server (PKU_HOLE_PIC_PATH + url)
+ * and level, see ImagePyramid.key, so the same picture is downloaded and
+ * decoded once however many topics show it. The cache is bounded by the memory the pixels take, not by the number of
+ * images, and evicts the least recently used images first. Images larger than
+ * the whole budget are not cached.
+ */
+public class ImageCache {
+
+	private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private static final LinkedHashMap<String, BufferedImage> map = new LinkedHashMap<String, BufferedImage>(16,
+			0.75f, true);
+
+	private static long maxBytes = DEFAULT_MAX_BYTES;
+	private static long bytes;
+
+	private static long hitCount, missCount, evictionCount;
+
+	/**
+	 * 设置缓存大小
+	 *
+	 * @param max
+	 *            最大字节数(按解码后的像素计算)
+	 */
+	public static synchronized void setMaxBytes(long max) {
+		maxBytes = max;
+		trim();
+	}
+
+	/**
+	 * @return the image, or null if it isn't cached
+	 */
+	public static synchronized BufferedImage get(String key) {
+		BufferedImage image = map.get(key);
+		if (image == null)
+			missCount++;
+		else
+			hitCount++;
+		return image;
+	}
+
+	public static synchronized void put(String key, BufferedImage image) {
+		long size = sizeOf(image);
+		if (size > maxBytes)
+			return;
+		BufferedImage old = map.put(key, image);
+		if (old != null)
+			bytes -= sizeOf(old);
+		bytes += size;
+		trim();
+	}
+
+	public static synchronized void remove(String key) {
+		BufferedImage old = map.remove(key);
+		if (old != null)
+			bytes -= sizeOf(old);
+	}
+
+	public static synchronized void clear() {
+		map.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Memory taken by the pixels of the image.
+	 */
+	public static long sizeOf(BufferedImage image) {
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType())
+				/ 8;
+	}
+
+	private static void trim() {
+		for (Iterator<Map.Entry<String, BufferedImage>> it = map.entrySet().iterator(); bytes > maxBytes
+				&& it.hasNext();) {
+			bytes -= sizeOf(it.next().getValue());
+			it.remove();
+			evictionCount++;
+		}
+	}
+
+	public static synchronized long getBytes() {
+		return bytes;
+	}
+
+	public static synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public static synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public static synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public static synchronized String getStatistics() {
+		return String.format("ImageCache[size=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d]", map.size(), bytes,
+				maxBytes, hitCount, missCount, evictionCount);
+	}
+
+}
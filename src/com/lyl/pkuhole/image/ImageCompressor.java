@@ -0,0 +1,247 @@
+package com.lyl.pkuhole.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.network.IOExecutor;
+
+/**
+ * 上传前的图片压缩。
+ * 
+ * The image is first scaled down so that neither side exceeds the maximum
+ * dimension, halving it step by step with bilinear filtering, which is nearly
+ * as good as area averaging and much faster. Then the format is chosen from
+ * the content: images with transparency or large flat areas (screenshots,
+ * drawings) become PNG, everything else (photos) becomes JPEG. The JPEG
+ * quality is searched for the best one that still fits the target size.
+ * 
+ * This is slow for large images and must not be used on the event dispatch
+ * thread. It stops with a PKUHoleException when the thread is interrupted.
+ */
+public class ImageCompressor {
+
+	private static final int DEFAULT_MAX_DIMENSION = 2048;
+	private static final int DEFAULT_TARGET_BYTES = 512 * 1024;
+	private static final float DEFAULT_MIN_QUALITY = 0.5f;
+	private static final float DEFAULT_MAX_QUALITY = 0.92f;
+	/**
+	 * Number of steps of the quality search; the result is within
+	 * (max-min)/2^steps of the best quality.
+	 */
+	private static final int QUALITY_SEARCH_STEPS = 5;
+	/**
+	 * Images where at least this share of the sampled pixels equal their right
+	 * neighbour are treated as graphics rather than photos.
+	 */
+	private static final double FLAT_RATIO = 0.5;
+	private static final int SAMPLE_GRID = 128;
+
+	private int maxDimension = DEFAULT_MAX_DIMENSION;
+	private int targetBytes = DEFAULT_TARGET_BYTES;
+	private float minQuality = DEFAULT_MIN_QUALITY;
+	private float maxQuality = DEFAULT_MAX_QUALITY;
+
+	/**
+	 * 设置图片的最大边长
+	 * 
+	 * @param maxDimension
+	 *            最大边长(像素)，0表示不缩小
+	 */
+	public void setMaxDimension(int maxDimension) {
+		this.maxDimension = maxDimension;
+	}
+
+	/**
+	 * 设置压缩后的目标大小。PNG images larger than this are sent as JPEG unless
+	 * they have transparency.
+	 * 
+	 * @param targetBytes
+	 *            目标大小(字节)
+	 */
+	public void setTargetBytes(int targetBytes) {
+		this.targetBytes = targetBytes;
+	}
+
+	/**
+	 * 设置JPEG质量的搜索范围
+	 * 
+	 * @param min
+	 *            最低质量(0~1)，即使超出目标大小也不会更低
+	 * @param max
+	 *            最高质量(0~1)
+	 */
+	public void setQualityRange(float min, float max) {
+		this.minQuality = min;
+		this.maxQuality = max;
+	}
+
+	/**
+	 * 压缩图片
+	 * 
+	 * @throws PKUHoleException
+	 *             编码失败或被中断
+	 */
+	public CompressedImage compress(BufferedImage image) throws PKUHoleException {
+		BufferedImage scaled = scaleDown(image);
+		checkInterrupted();
+		boolean alpha = hasTransparency(scaled);
+		byte[] data = null;
+		if (alpha || isGraphic(scaled)) {
+			data = encodePNG(scaled);
+			if (alpha || data.length <= targetBytes)
+				return new CompressedImage(data, "png", scaled.getWidth(), scaled.getHeight(), image.getWidth(),
+						image.getHeight());
+		}
+		data = encodeJPEG(toRGB(scaled));
+		return new CompressedImage(data, "jpeg", scaled.getWidth(), scaled.getHeight(), image.getWidth(),
+				image.getHeight());
+	}
+
+	private BufferedImage scaleDown(BufferedImage image) throws PKUHoleException {
+		int w = image.getWidth(), h = image.getHeight();
+		int max = Math.max(w, h);
+		if (maxDimension <= 0 || max <= maxDimension)
+			return image;
+		int targetW = Math.max(1, (int) ((long) w * maxDimension / max));
+		int targetH = Math.max(1, (int) ((long) h * maxDimension / max));
+		int type = image.getTransparency() == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB
+				: BufferedImage.TYPE_INT_ARGB;
+		BufferedImage result = image;
+		// Halve while more than twice too large, then one last step to the exact size.
+		do {
+			checkInterrupted();
+			w = w / 2 >= targetW ? w / 2 : targetW;
+			h = h / 2 >= targetH ? h / 2 : targetH;
+			BufferedImage step = new BufferedImage(w, h, type);
+			Graphics2D g = step.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setComposite(AlphaComposite.Src);
+			g.drawImage(result, 0, 0, w, h, null);
+			g.dispose();
+			result = step;
+		} while (w != targetW || h != targetH);
+		return result;
+	}
+
+	private static boolean hasTransparency(BufferedImage image) {
+		if (image.getTransparency() == Transparency.OPAQUE)
+			return false;
+		int w = image.getWidth();
+		int[] row = new int[w];
+		for (int y = 0; y < image.getHeight(); y++) {
+			image.getRGB(0, y, w, 1, row, 0, w);
+			for (int argb : row)
+				if (argb >>> 24 != 0xff)
+					return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether the image looks like a screenshot or drawing, judged by how often
+	 * a pixel equals its right neighbour on a grid of samples.
+	 */
+	private static boolean isGraphic(BufferedImage image) {
+		int w = image.getWidth(), h = image.getHeight();
+		if (w < 2)
+			return true;
+		int stepX = Math.max(1, (w - 1) / SAMPLE_GRID), stepY = Math.max(1, h / SAMPLE_GRID);
+		int samples = 0, flat = 0;
+		for (int y = 0; y < h; y += stepY) {
+			for (int x = 0; x < w - 1; x += stepX) {
+				samples++;
+				if (image.getRGB(x, y) == image.getRGB(x + 1, y))
+					flat++;
+			}
+		}
+		return flat >= samples * FLAT_RATIO;
+	}
+
+	private static BufferedImage toRGB(BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR)
+			return image;
+		BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = rgb.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, rgb.getWidth(), rgb.getHeight());
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return rgb;
+	}
+
+	private static byte[] encodePNG(BufferedImage image) throws PKUHoleException {
+		return encode(image, "png", -1);
+	}
+
+	/**
+	 * Binary search for the highest quality that fits the target size.
+	 */
+	private byte[] encodeJPEG(BufferedImage image) throws PKUHoleException {
+		byte[] best = encode(image, "jpeg", maxQuality);
+		if (best.length <= targetBytes)
+			return best;
+		byte[] smallest = encode(image, "jpeg", minQuality);
+		if (smallest.length >= targetBytes)
+			return smallest;
+		best = smallest;
+		float low = minQuality, high = maxQuality;
+		for (int i = 0; i < QUALITY_SEARCH_STEPS; i++) {
+			float quality = (low + high) / 2;
+			byte[] data = encode(image, "jpeg", quality);
+			if (data.length <= targetBytes) {
+				best = data;
+				low = quality;
+			} else {
+				high = quality;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param quality
+	 *            JPEG quality, or negative to use the default settings
+	 */
+	private static byte[] encode(BufferedImage image, String format, float quality) throws PKUHoleException {
+		checkInterrupted();
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		if (!writers.hasNext())
+			throw new PKUHoleException("图片转码失败！");
+		ImageWriter writer = writers.next();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if (quality >= 0) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(quality);
+			}
+			writer.setOutput(ios);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} catch (IOException e) {
+			throw new PKUHoleException("图片转码失败！");
+		} finally {
+			writer.dispose();
+		}
+		return out.toByteArray();
+	}
+
+	private static void checkInterrupted() throws PKUHoleException {
+		if (Thread.currentThread().isInterrupted())
+			throw new PKUHoleException(IOExecutor.CANCELLED_MESSAGE);
+	}
+
+}
@@ -0,0 +1,145 @@
+package com.lyl.pkuhole.image;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * 图片解码。
+ *
+ * Images that are larger than needed are decoded at a reduced size directly:
+ * the reader skips rows and columns (source subsampling), so the full-size
+ * image is never created. See ImagePyramid for the sizes used.
+ */
+public class ImageDecoder {
+
+	/**
+	 * 解码图片
+	 *
+	 * @param subsampling
+	 *            keep one pixel in this many, in each direction; 1 for the original
+	 *            size. The result is ceil(width / subsampling) by
+	 *            ceil(height / subsampling).
+	 * @return the image, or null if the data can't be decoded
+	 */
+	public static BufferedImage decode(byte[] data, int subsampling) {
+		try {
+			ImageReader reader = createReader(data);
+			if (reader == null)
+				return null;
+			try {
+				ImageReadParam param = reader.getDefaultReadParam();
+				if (subsampling > 1)
+					param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException | RuntimeException e) {
+			// Broken data may make readers throw anything.
+			return null;
+		}
+	}
+
+	/**
+	 * 读取图片尺寸。Only the header is read.
+	 *
+	 * @return the size, or null if the data can't be decoded
+	 */
+	public static Dimension readSize(byte[] data) {
+		try {
+			ImageReader reader = createReader(data);
+			if (reader == null)
+				return null;
+			try {
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 创建读取该数据的ImageReader
+	 * 
+	 * @return a reader with its input set, to be disposed by the caller; null if
+	 *         the format is unknown
+	 */
+	public static ImageReader createReader(byte[] data) throws IOException {
+		ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data));
+		if (in == null)
+			return null;
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+		if (!readers.hasNext())
+			return null;
+		ImageReader reader = readers.next();
+		reader.setInput(in, true, true);
+		return reader;
+	}
+
+	/**
+	 * Whether the data is in a format that can be decoded. Only the header is
+	 * looked at.
+	 */
+	public static boolean canDecode(byte[] data) {
+		try {
+			ImageReader reader = createReader(data);
+			if (reader == null)
+				return false;
+			reader.dispose();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Scale the image to the size in one bilinear pass, into an image of the
+	 * screen's format so that painting it needs no conversion.
+	 */
+	static BufferedImage resample(BufferedImage image, int width, int height) {
+		if (image.getWidth() == width && image.getHeight() == height)
+			return image;
+		BufferedImage result = createCompatibleImage(width, height, image.getTransparency());
+		Graphics2D g = result.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, 0, 0, width, height, null);
+		g.dispose();
+		return result;
+	}
+
+	/**
+	 * Copy the image, at the same size, into an image of the screen's format.
+	 * Decoded images are in whatever format the reader chose.
+	 */
+	static BufferedImage toCompatible(BufferedImage image) {
+		BufferedImage result = createCompatibleImage(image.getWidth(), image.getHeight(), image.getTransparency());
+		Graphics2D g = result.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return result;
+	}
+
+	private static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+		if (!GraphicsEnvironment.isHeadless()) {
+			return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+					.getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+		}
+		return new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB
+				: BufferedImage.TYPE_INT_ARGB);
+	}
+
+}
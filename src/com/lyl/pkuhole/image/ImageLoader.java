@@ -0,0 +1,369 @@
+package com.lyl.pkuhole.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.lyl.pkuhole.PKUHoleAPI;
+import com.lyl.pkuhole.exception.HttpStatusException;
+import com.lyl.pkuhole.exception.ImageDecodeException;
+import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.network.HttpTransport;
+import com.lyl.pkuhole.network.IOExecutor;
+
+/**
+ * 图片加载服务。
+ *
+ * Images are downloaded and decoded by a small fixed pool of daemon threads
+ * named "pkuhole-image-N", so a page full of images never opens more than a
+ * few connections or decodes more than a few images at once. Waiting requests
+ * are served by priority, then in the order they were made.
+ *
+ * Images decoded at a reduced size are kept in the ImageCache as levels of
+ * an ImagePyramid, with copies at the size requested, and requests it can
+ * serve complete at once. Originals are not: they are large and only needed
+ * while they are shown, so they are decoded again from the encoded bytes every
+ * time. Downloaded bytes are kept in the DiskImageStore, so they survive
+ * restarts.
+ *
+ * Failures are remembered by the NegativeImageCache, and requests for a
+ * picture that failed recently fail at once, without going to the network.
+ *
+ * Requests for the same image share one download. Every request gets its own
+ * future; cancelling it only drops that request, and the download itself is
+ * dropped (or aborted, if already running) once nobody is waiting for it.
+ */
+public class ImageLoader {
+
+	/**
+	 * 加载优先级，从高到低
+	 */
+	public static enum Priority {
+		/**
+		 * The image is on screen.
+		 */
+		VISIBLE,
+		/**
+		 * The image is on the page being shown, but scrolled out of view.
+		 */
+		PAGE,
+		/**
+		 * The image may be needed soon.
+		 */
+		PREFETCH
+	}
+
+	private static final int THREADS = 3;
+	private static final long KEEP_ALIVE_SECONDS = 30;
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, KEEP_ALIVE_SECONDS,
+			TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+			new IOExecutor.NamedThreadFactory("pkuhole-image"));
+
+	/**
+	 * Every image that is queued or running, by taskKey. Guarded by
+	 * ImageLoader.class, as is the state of every task.
+	 */
+	private static final Map<String, Task> tasks = new HashMap<String, Task>();
+
+	private static long sequence;
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 加载图片
+	 *
+	 * @param path
+	 *            path of the image on the server, i.e. PKU_HOLE_PIC_PATH + url
+	 * @param maxHeight
+	 *            需要的高度；0表示原始大小
+	 * @return the image scaled to fit maxHeight, to be painted as is, or the
+	 *         original; completes exceptionally with an HttpStatusException if
+	 *         the server refused, an ImageDecodeException if the image is broken
+	 *         or another PKUHoleException if the network failed. cancel(true)
+	 *         drops the request.
+	 */
+	public static CompletableFuture<BufferedImage> load(String path, int maxHeight, Priority priority) {
+		String key = taskKey(path, maxHeight);
+		if (maxHeight > 0) {
+			BufferedImage cached = ImagePyramid.getCachedDisplay(path, maxHeight);
+			if (cached != null)
+				return CompletableFuture.completedFuture(cached);
+		}
+		PKUHoleException failure = NegativeImageCache.get(path);
+		if (failure != null) {
+			CompletableFuture<BufferedImage> failed = new CompletableFuture<BufferedImage>();
+			failed.completeExceptionally(failure);
+			return failed;
+		}
+		CompletableFuture<BufferedImage> request = new CompletableFuture<BufferedImage>();
+		boolean submit = false;
+		Task task;
+		synchronized (ImageLoader.class) {
+			task = tasks.get(key);
+			if (task == null) {
+				task = new Task(key, path, maxHeight, sequence++);
+				tasks.put(key, task);
+				submit = true;
+			}
+			task.waiters.put(request, priority);
+			task.updatePriority();
+		}
+		Task t = task;
+		request.whenComplete((image, e) -> {
+			if (request.isCancelled())
+				t.release(request);
+		});
+		if (submit)
+			executor.execute(task);
+		return request;
+	}
+
+	/**
+	 * 修改请求的优先级
+	 *
+	 * @param request
+	 *            a future returned by load
+	 */
+	public static void setPriority(CompletableFuture<BufferedImage> request, Priority priority) {
+		synchronized (ImageLoader.class) {
+			for (Task task : tasks.values()) {
+				if (task.waiters.containsKey(request)) {
+					task.waiters.put(request, priority);
+					task.updatePriority();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether loading again will fail the same way: the image is gone from the
+	 * server or broken.
+	 */
+	public static boolean isPermanentFailure(Throwable e) {
+		PKUHoleException cause = IOExecutor.unwrap(e);
+		if (cause instanceof HttpStatusException) {
+			int status = ((HttpStatusException) cause).getStatusCode();
+			return status == 404 || status == 410;
+		}
+		return cause instanceof ImageDecodeException;
+	}
+
+	/**
+	 * Requests for the same picture at the same height share a task.
+	 */
+	private static String taskKey(String path, int maxHeight) {
+		return path + "@" + maxHeight;
+	}
+
+	private static BufferedImage fetch(String path, int maxHeight) throws PKUHoleException {
+		if (maxHeight <= 0)
+			return fetchLevel(path, maxHeight);
+		BufferedImage image = ImagePyramid.getCachedDisplay(path, maxHeight);
+		if (image != null)
+			return image;
+		return ImagePyramid.toDisplay(path, fetchLevel(path, maxHeight), maxHeight);
+	}
+
+	/**
+	 * The level of the ImagePyramid for maxHeight, or the original for 0.
+	 */
+	private static BufferedImage fetchLevel(String path, int maxHeight) throws PKUHoleException {
+		if (maxHeight > 0) {
+			BufferedImage image = ImagePyramid.get(path, maxHeight);
+			if (image != null)
+				return image;
+		}
+		DiskImageStore store = DiskImageStore.getDefault();
+		if (store != null) {
+			byte[] data = store.get(path);
+			if (data != null) {
+				BufferedImage image = ImagePyramid.decode(path, data, maxHeight);
+				if (image != null)
+					return image;
+				store.remove(path);
+			}
+		}
+		// Download first and decode afterwards, so that a broken connection is
+		// never mistaken for a broken image.
+		byte[] data = download(path);
+		BufferedImage image = ImagePyramid.decode(path, data, maxHeight);
+		if (image == null)
+			throw new ImageDecodeException("图片损坏！");
+		if (store != null)
+			store.put(path, data);
+		return image;
+	}
+
+	/**
+	 * 读取图片的原始数据：先查本地存储，没有则从服务器下载。
+	 * 
+	 * Blocks, and bypasses the queue; meant for viewers that decode the parts
+	 * they need themselves.
+	 */
+	public static byte[] loadData(String path) throws PKUHoleException {
+		DiskImageStore store = DiskImageStore.getDefault();
+		byte[] data = store == null ? null : store.get(path);
+		if (data != null)
+			return data;
+		PKUHoleException failure = NegativeImageCache.get(path);
+		if (failure != null)
+			throw failure;
+		try {
+			data = download(path);
+		} catch (PKUHoleException e) {
+			NegativeImageCache.put(path, e);
+			throw e;
+		}
+		if (store != null && ImageDecoder.canDecode(data))
+			store.put(path, data);
+		return data;
+	}
+
+	private static byte[] download(String path) throws PKUHoleException {
+		URI uri;
+		try {
+			uri = URI.create("http://" + PKUHoleAPI.PKU_HOLE_HOST + path);
+		} catch (IllegalArgumentException e) {
+			throw new ImageDecodeException("图片地址错误！");
+		}
+		byte[] data = HttpTransport.get(uri, ImageLoader::readAll);
+		if (Thread.currentThread().isInterrupted())
+			throw new PKUHoleException(IOExecutor.CANCELLED_MESSAGE);
+		return data;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int n;
+		while ((n = in.read(buffer)) != -1)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+
+	private static class Task implements Runnable, Comparable<Task> {
+
+		final String key;
+		final String path;
+		final int maxHeight;
+		final long order;
+		final Map<CompletableFuture<BufferedImage>, Priority> waiters;
+
+		Priority priority;
+		Thread runner;
+		boolean started;
+
+		Task(String key, String path, int maxHeight, long order) {
+			this.key = key;
+			this.path = path;
+			this.maxHeight = maxHeight;
+			this.order = order;
+			this.waiters = new LinkedHashMap<CompletableFuture<BufferedImage>, Priority>();
+		}
+
+		/**
+		 * The task runs at the highest priority of its waiters. A queued task is
+		 * taken out and put back, as the queue only orders on insertion.
+		 */
+		void updatePriority() {
+			Priority highest = null;
+			for (Priority p : waiters.values())
+				if (highest == null || p.ordinal() < highest.ordinal())
+					highest = p;
+			if (highest == null || highest == priority)
+				return;
+			if (priority != null && !started && executor.getQueue().remove(this)) {
+				priority = highest;
+				executor.getQueue().add(this);
+			} else {
+				priority = highest;
+			}
+		}
+
+		void release(CompletableFuture<BufferedImage> request) {
+			synchronized (ImageLoader.class) {
+				if (waiters.remove(request) == null)
+					return;
+				if (!waiters.isEmpty()) {
+					updatePriority();
+					return;
+				}
+				tasks.remove(key, this);
+				if (!started) {
+					executor.remove(this);
+				} else if (runner != null) {
+					runner.interrupt();
+					HttpTransport.abort(runner);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			synchronized (ImageLoader.class) {
+				if (waiters.isEmpty())
+					return;
+				started = true;
+				runner = Thread.currentThread();
+			}
+			BufferedImage image = null;
+			PKUHoleException error = null;
+			boolean remember = true;
+			try {
+				image = fetch(path, maxHeight);
+			} catch (PKUHoleException e) {
+				error = e;
+			} catch (RuntimeException e) {
+				error = new ImageDecodeException(String.valueOf(e));
+			} catch (Error e) {
+				// E.g. out of memory on a huge image: the waiters must still be
+				// completed and the task removed, or the image would stay loading
+				// for good. It may well load next time, so don't remember it.
+				error = new ImageDecodeException(String.valueOf(e));
+				remember = false;
+			}
+			CompletableFuture<?>[] requests;
+			synchronized (ImageLoader.class) {
+				runner = null;
+				// Don't leak a late interrupt into the next task.
+				Thread.interrupted();
+				tasks.remove(key, this);
+				requests = waiters.keySet().toArray(new CompletableFuture<?>[0]);
+				waiters.clear();
+			}
+			// Nobody waiting means it was cancelled, not that it failed.
+			if (error != null && remember && requests.length > 0)
+				NegativeImageCache.put(path, error);
+			for (CompletableFuture<?> request : requests) {
+				@SuppressWarnings("unchecked")
+				CompletableFuture<BufferedImage> r = (CompletableFuture<BufferedImage>) request;
+				if (error == null)
+					r.complete(image);
+				else
+					r.completeExceptionally(error);
+			}
+		}
+
+		@Override
+		public int compareTo(Task o) {
+			int c = priority.compareTo(o.priority);
+			return c != 0 ? c : Long.compare(order, o.order);
+		}
+
+	}
+
+}
@@ -0,0 +1,186 @@
+package com.lyl.pkuhole.image;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 图片的多级缩略图。
+ *
+ * Level k of a picture is the original downsampled by 2^k in each direction,
+ * ceil(width / 2^k) by ceil(height / 2^k). A view asks for the smallest level
+ * that is at least as high as it needs, so every view of the same picture at a
+ * similar size shares one level. A view of a fixed height gets the level
+ * resampled once more to exactly that height (the display copy), so that it
+ * paints 1:1 instead of scaling on every repaint.
+ *
+ * Levels and display copies live in the ImageCache, so they are counted in its
+ * memory budget and
+ * evicted like any other image; all of them are in the screen's format. A
+ * missing level is made from the nearest finer
+ * level in the cache by halving it; only if there is none is the picture
+ * decoded, with source subsampling, directly at the level needed. The size of
+ * the original is remembered once known, so levels can be chosen without
+ * looking at the data again.
+ */
+public class ImagePyramid {
+
+	private static final int MAX_SIZES = 4096;
+
+	/**
+	 * Size of the originals, by path. Guarded by ImagePyramid.class.
+	 */
+	private static final LinkedHashMap<String, Dimension> sizes = new LinkedHashMap<String, Dimension>(16, 0.75f,
+			true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Dimension> eldest) {
+			return size() > MAX_SIZES;
+		}
+	};
+
+	/**
+	 * Key of the level in the ImageCache.
+	 */
+	public static String key(String path, int level) {
+		return path + "@" + level;
+	}
+
+	/**
+	 * 选择缩略级别
+	 *
+	 * @param height
+	 *            原图高度
+	 * @param targetHeight
+	 *            需要的高度；0表示原始大小
+	 * @return the highest level that is still at least targetHeight high, or 0
+	 */
+	public static int levelFor(int height, int targetHeight) {
+		int level = 0;
+		if (targetHeight <= 0)
+			return level;
+		while (ceilDiv(height, 1 << (level + 1)) >= targetHeight && level < 30)
+			level++;
+		return level;
+	}
+
+	/**
+	 * The level for the target height, if the original size is known.
+	 *
+	 * @return the level, or -1 if the picture has never been decoded
+	 */
+	public static int levelFor(String path, int targetHeight) {
+		Dimension size = getOriginalSize(path);
+		return size == null ? -1 : levelFor(size.height, targetHeight);
+	}
+
+	public static synchronized Dimension getOriginalSize(String path) {
+		return sizes.get(path);
+	}
+
+	private static String displayKey(String path, int maxHeight) {
+		return path + "#" + maxHeight;
+	}
+
+	/**
+	 * The level from the cache, without making it.
+	 *
+	 * @return the level, or null
+	 */
+	public static BufferedImage getCached(String path, int level) {
+		return level < 0 ? null : ImageCache.get(key(path, level));
+	}
+
+	/**
+	 * 获取缩略图，必要时由缓存中更精细的级别缩小得到。Does no decoding, but may
+	 * halve large images, so it is not for the event dispatch thread.
+	 *
+	 * @return the smallest level at least targetHeight high, or null if neither
+	 *         it nor a finer level is cached
+	 */
+	public static BufferedImage get(String path, int targetHeight) {
+		int level = levelFor(path, targetHeight);
+		if (level < 0)
+			return null;
+		BufferedImage image = getCached(path, level);
+		if (image != null)
+			return image;
+		for (int finer = level - 1; finer >= 0; finer--) {
+			image = getCached(path, finer);
+			if (image == null)
+				continue;
+			for (int l = finer + 1; l <= level; l++) {
+				image = halve(image);
+				ImageCache.put(key(path, l), image);
+			}
+			return image;
+		}
+		return null;
+	}
+
+	/**
+	 * 获取缓存中显示大小的图片，不做缩放
+	 *
+	 * @return the display copy for maxHeight, or the level itself if it is no
+	 *         higher; null if it isn't cached
+	 */
+	public static BufferedImage getCachedDisplay(String path, int maxHeight) {
+		BufferedImage image = ImageCache.get(displayKey(path, maxHeight));
+		if (image != null)
+			return image;
+		image = getCached(path, levelFor(path, maxHeight));
+		return image != null && image.getHeight() <= maxHeight ? image : null;
+	}
+
+	/**
+	 * 将级别缩小到显示大小并放入缓存。Not for the event dispatch thread.
+	 *
+	 * @param level
+	 *            the level for maxHeight
+	 * @return the level scaled to maxHeight high, or the level itself if it is no
+	 *         higher
+	 */
+	public static BufferedImage toDisplay(String path, BufferedImage level, int maxHeight) {
+		if (level.getHeight() <= maxHeight)
+			return level;
+		int width = Math.max(1, (int) Math.round((double) level.getWidth() * maxHeight / level.getHeight()));
+		BufferedImage image = ImageDecoder.resample(level, width, maxHeight);
+		ImageCache.put(displayKey(path, maxHeight), image);
+		return image;
+	}
+
+	/**
+	 * 解码图片到所需的级别并放入缓存。Level 0, the original, is decoded for the caller
+	 * alone and not cached; it is large and only needed while it is shown.
+	 *
+	 * @return the smallest level at least targetHeight high, or null if the data
+	 *         can't be decoded
+	 */
+	public static BufferedImage decode(String path, byte[] data, int targetHeight) {
+		Dimension size = ImageDecoder.readSize(data);
+		if (size == null)
+			return null;
+		synchronized (ImagePyramid.class) {
+			sizes.put(path, size);
+		}
+		int level = levelFor(size.height, targetHeight);
+		BufferedImage image = ImageDecoder.decode(data, 1 << level);
+		if (image != null && targetHeight > 0) {
+			image = ImageDecoder.toCompatible(image);
+			ImageCache.put(key(path, level), image);
+		}
+		return image;
+	}
+
+	/**
+	 * The next level down: half the size, rounded up.
+	 */
+	private static BufferedImage halve(BufferedImage image) {
+		return ImageDecoder.resample(image, ceilDiv(image.getWidth(), 2), ceilDiv(image.getHeight(), 2));
+	}
+
+	private static int ceilDiv(int a, int b) {
+		return (a + b - 1) / b;
+	}
+
+}
@@ -0,0 +1,246 @@
+package com.lyl.pkuhole.image;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.lyl.pkuhole.exception.HttpStatusException;
+import com.lyl.pkuhole.exception.ImageDecodeException;
+import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.network.IOExecutor;
+
+/**
+ * 加载失败的图片记录，避免反复请求已删除或损坏的图片。
+ *
+ * Failures are kept by path on the server. Pictures that are gone (404, 410)
+ * or broken are remembered for days, as they won't come back; other failures,
+ * such as a dropped connection or a 5xx, only for a minute, long enough to
+ * stop a page of images from retrying one after another.
+ *
+ * The records are appended to ~/.pkuhole/failed-images.txt, one per line, so
+ * they survive restarts. The file is read in the background by
+ * {@link #loadAsync()} at startup, and rewritten without the expired records
+ * whenever most of it has expired. Lookups only touch memory, so they can be
+ * made on the event dispatch thread; until the file has been read they miss.
+ * The file is written outside the lock of the records. All methods are
+ * thread-safe.
+ */
+public class NegativeImageCache {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final long PERMANENT_TTL = 7L * 24 * 60 * 60 * 1000;
+	private static final long TRANSIENT_TTL = 60L * 1000;
+	private static final int MAX_RECORDS = 100000;
+
+	// Status of failures that are not HTTP errors.
+	private static final int DECODE_FAILURE = -1;
+	private static final int NETWORK_FAILURE = -2;
+
+	private static final Map<String, Record> records = new HashMap<String, Record>();
+
+	private static final File file = new File(System.getProperty("user.home"), ".pkuhole/failed-images.txt");
+	// Guards the file and lineCount. Never taken while holding the class lock.
+	private static final Object fileLock = new Object();
+	private static boolean loading;
+	// Lines in the file, live or not.
+	private static int lineCount;
+
+	/**
+	 * 查询失败记录
+	 *
+	 * @return the failure recorded for the path, as the loader threw it; null if
+	 *         none, or it has expired
+	 */
+	public static synchronized PKUHoleException get(String path) {
+		Record record = records.get(path);
+		if (record == null)
+			return null;
+		if (record.expires <= System.currentTimeMillis()) {
+			records.remove(path);
+			return null;
+		}
+		return record.toException();
+	}
+
+	/**
+	 * 记录加载失败。Cancellations are not failures and are ignored.
+	 */
+	public static void put(String path, PKUHoleException e) {
+		if (IOExecutor.CANCELLED_MESSAGE.equals(e.getMessage()))
+			return;
+		int status;
+		if (e instanceof HttpStatusException)
+			status = ((HttpStatusException) e).getStatusCode();
+		else if (e instanceof ImageDecodeException)
+			status = DECODE_FAILURE;
+		else
+			status = NETWORK_FAILURE;
+		long ttl = ImageLoader.isPermanentFailure(e) ? PERMANENT_TTL : TRANSIENT_TTL;
+		String message = String.valueOf(e.getMessage()).replaceAll("[\t\r\n]", " ");
+		Record record = new Record(System.currentTimeMillis() + ttl, status, message);
+		boolean full;
+		synchronized (NegativeImageCache.class) {
+			records.put(path, record);
+			full = records.size() > MAX_RECORDS;
+			if (full)
+				purge();
+		}
+		synchronized (fileLock) {
+			if (full) {
+				rewrite();
+				return;
+			}
+			File dir = file.getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs())
+				return;
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), UTF_8)) {
+				out.write(record.toLine(path));
+				lineCount++;
+			} catch (IOException ex) {
+				// Still remembered until exit.
+			}
+		}
+	}
+
+	/**
+	 * Forget failures that may have been caused by the network, e.g. when the
+	 * user asks to reload.
+	 */
+	public static synchronized void clearTransient() {
+		for (Iterator<Record> it = records.values().iterator(); it.hasNext();)
+			if (!it.next().isPermanent())
+				it.remove();
+	}
+
+	/**
+	 * Read the file on the I/O pool, and compact it if most of it is dead. Call
+	 * once at startup.
+	 */
+	public static synchronized void loadAsync() {
+		if (loading)
+			return;
+		loading = true;
+		IOExecutor.submit(() -> {
+			load();
+			return null;
+		});
+	}
+
+	private static void load() {
+		synchronized (fileLock) {
+			if (!file.isFile())
+				return;
+			long now = System.currentTimeMillis();
+			Map<String, Record> loaded = new HashMap<String, Record>();
+			// Lines appended since startup are counted again below.
+			lineCount = 0;
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					lineCount++;
+					String[] fields = line.split("\t", 4);
+					if (fields.length < 4)
+						continue;
+					try {
+						Record record = new Record(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), fields[2]);
+						if (record.expires > now)
+							loaded.put(fields[3], record);
+						else
+							loaded.remove(fields[3]);
+					} catch (NumberFormatException e) {
+						// A torn line from a crash; skip it.
+					}
+				}
+			} catch (IOException e) {
+				return;
+			}
+			int size;
+			synchronized (NegativeImageCache.class) {
+				// Failures recorded since startup are newer.
+				for (Map.Entry<String, Record> entry : loaded.entrySet())
+					records.putIfAbsent(entry.getKey(), entry.getValue());
+				size = records.size();
+			}
+			if (lineCount > 2 * size)
+				rewrite();
+		}
+	}
+
+	/**
+	 * Drop expired records from memory. The caller rewrites the file.
+	 */
+	private static void purge() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Record> it = records.values().iterator(); it.hasNext();)
+			if (it.next().expires <= now)
+				it.remove();
+		// Still too many: keep the permanent ones.
+		if (records.size() > MAX_RECORDS)
+			clearTransient();
+	}
+
+	/**
+	 * Write the live records to the file. Must hold fileLock.
+	 */
+	private static void rewrite() {
+		File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs())
+			return;
+		Map<String, Record> snapshot;
+		synchronized (NegativeImageCache.class) {
+			snapshot = new HashMap<String, Record>(records);
+		}
+		File temp = new File(dir, file.getName() + ".tmp");
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), UTF_8)) {
+			for (Map.Entry<String, Record> entry : snapshot.entrySet())
+				out.write(entry.getValue().toLine(entry.getKey()));
+		} catch (IOException e) {
+			temp.delete();
+			return;
+		}
+		file.delete();
+		if (temp.renameTo(file))
+			lineCount = snapshot.size();
+	}
+
+	private static class Record {
+
+		final long expires;
+		final int status;
+		final String message;
+
+		Record(long expires, int status, String message) {
+			this.expires = expires;
+			this.status = status;
+			this.message = message;
+		}
+
+		boolean isPermanent() {
+			return ImageLoader.isPermanentFailure(toException());
+		}
+
+		PKUHoleException toException() {
+			if (status == DECODE_FAILURE)
+				return new ImageDecodeException(message);
+			if (status == NETWORK_FAILURE)
+				return new PKUHoleException(message);
+			return new HttpStatusException(status, message);
+		}
+
+		String toLine(String path) {
+			return expires + "\t" + status + "\t" + message + "\t" + path + "\n";
+		}
+
+	}
+
+}
@@ -9,20 +9,20 @@ import com.lyl.pkuhole.exception.PKUHoleException;
 import com.lyl.pkuhole.utils.UIUtils;
 
 /**
- * ǰûйעб
+ * 管理当前用户所有关注的树洞列表。
  * 
- * ڹעֻAPIֻ֪:
- * 1.ȡûйע/services/pkuhole/api.php?action=getattention token=*
- * 2.ĳйע/ȡأ/services/pkuhole/api.php?action=attention
+ * 树洞关于关注只有两个API（已知的只有两个）:
+ * 1.获取用户所有关注的树洞：/services/pkuhole/api.php?action=getattention token=*
+ * 2.将某个树洞进行关注/取关：/services/pkuhole/api.php?action=attention
  * token=*&pid=*&switch=1/0
- * (еgetcommentʱtokenõjsonattentionֶΣ̫ߣΪ˻ȡעȡб)
+ * (还有第三个是在getcomment的时候传token，获得的json里有attention字段，但代价太高，为了获取关注情况获取整个评论列表，不采用)
  * 
- * Ϊ˵֪һضǷ񱻹עҪڱάһעбû¼ʱʼעȡʱж̬ά
+ * 为了得知一个特定的树洞是否被关注，需要在本地维护一个关注的树洞列表，用户登录时初始化，后续关注或取关时进行动态维护。
  */
 public class AttentionManager {
 
 	/**
-	 * pidӴС
+	 * 按pid从大到小有序
 	 */
 	public static List<Topic> topicList;
 
@@ -37,10 +37,14 @@ public class AttentionManager {
 		try {
 			topics = PKUHoleAPI.getAttentionTopics(token);
 		} catch (PKUHoleException e) {
-			UIUtils.messageBox("ȡעбʧܣԭ" + e.getMessage() + "\n´򿪱ͻˡ");
+			UIUtils.messageBox("获取关注列表失败！原因：" + e.getMessage() + "\n请重新打开本客户端。");
 			System.exit(0);
 			return;
 		}
+		setAttentionList(topics);
+	}
+
+	public static void setAttentionList(Topic[] topics) {
 		topicList = new ArrayList<Topic>();
 		for (Topic topic : topics)
 			topicList.add(topic);
@@ -61,7 +65,7 @@ public class AttentionManager {
 			else
 				r = m;
 		}
-		// ظԪ
+		// 重复元素
 		if (l < topicList.size() && topicList.get(l).pid == topic.pid)
 			return;
 		topicList.add(l, topic);
@@ -1,19 +1,16 @@
 package com.lyl.pkuhole.model;
 
-import java.awt.Image;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
 import java.util.Observable;
+import java.util.concurrent.CompletableFuture;
 
-import javax.imageio.IIOException;
-import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 
 import com.lyl.pkuhole.PKUHoleAPI;
+import com.lyl.pkuhole.image.ImageLoader;
 import com.lyl.pkuhole.utils.TimeUtils;
 import com.lyl.pkuhole.utils.UIUtils;
 import com.lyl.pkuhole.widgets.TopicCell;
@@ -33,7 +30,12 @@ public class Topic extends Observable {
 
 	public int likenum;
 
-	public ImageIcon imageIcon;
+	/**
+	 * The image at display size, no higher than UIUtils.MAX_IMAGE_HEIGHT. It is
+	 * resampled once from a level of the ImagePyramid shared with other views of
+	 * the same picture; the original is only decoded when opened in an
+	 * ImageWindow.
+	 */
 	public ImageIcon scaledImageIcon;
 
 	/*
@@ -44,7 +46,7 @@ public class Topic extends Observable {
 
 	public long extra;
 
-	private boolean isLoaded = false;
+	private volatile boolean isLoaded = false;
 
 	@Override
 	public String toString() {
@@ -53,7 +55,7 @@ public class Topic extends Observable {
 	}
 
 	public String toFormattedString() {
-		return String.format("%s\n\n%s                :%d\tע:%d", text, TimeUtils.timeFormatter(timestamp), reply,
+		return String.format("%s\n\n%s                评论:%d\t关注:%d", text, TimeUtils.timeFormatter(timestamp), reply,
 				likenum);
 	}
 
@@ -65,68 +67,60 @@ public class Topic extends Observable {
 		}
 	}
 
-	public synchronized void loadImage() {
-		if (type != TopicType.IMAGE)
-			return;
-		if (isLoaded)
-			return;
-		new Thread() {
-			@Override
-			public void run() {
-				URL url;
-				try {
-					url = new URL("http://" + PKUHoleAPI.PKU_HOLE_HOST + PKUHoleAPI.PKU_HOLE_PIC_PATH + Topic.this.url);
-				} catch (MalformedURLException e) {
-					e.printStackTrace();
-					return;
-				}
-				try {
-					HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-					conn.setRequestMethod("GET");
-					conn.setConnectTimeout(5000);
-					Image image = ImageIO.read(conn.getInputStream());
-					imageIcon = new ImageIcon(image);
-					int width = image.getWidth(null);
-					int height = image.getHeight(null);
-					if (height > UIUtils.MAX_IMAGE_HEIGHT) {
-						width = UIUtils.MAX_IMAGE_HEIGHT * width / height;
-						height = UIUtils.MAX_IMAGE_HEIGHT;
-						scaledImageIcon = new ImageIcon(image.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-					} else {
-						scaledImageIcon = imageIcon;
-					}
-					isLoaded = true;
-					setChanged();
-					notifyObservers(null);
-				} catch (FileNotFoundException e) {
-					/**
-					 * This exception is thrown when a picture on the server has been deleted and
-					 * isn't accessible, as is an earlier picture. In this case, we still consider
-					 * the image loaded, notify the observers and let them to notify the user to
-					 * avoid re-accessing later.
-					 */
-					isLoaded = true;
-					setChanged();
-					notifyObservers(null);
-				} catch (IIOException e) {
-					/**
-					 * This exception is thrown when a picture on the server is broken and cannot be
-					 * parsed by ImageIO. In this case, we consider the image loaded, too, notify
-					 * the observers and let them to notify the user to avoid re-accessing later.
-					 */
-					isLoaded = true;
-					setChanged();
-					notifyObservers(null);
-				} catch (IOException e) {
-					setChanged();
-					notifyObservers(null);
-				}
+	/**
+	 * 加载图片。The image is fetched by the shared ImageLoader; observers are
+	 * notified on the event dispatch thread once it is loaded or has failed.
+	 * 
+	 * @return the request, to be cancelled when the image is no longer needed;
+	 *         null if there is nothing to load
+	 */
+	public CompletableFuture<BufferedImage> loadImage(ImageLoader.Priority priority) {
+		if (type != TopicType.IMAGE || isLoaded)
+			return null;
+		CompletableFuture<BufferedImage> request = ImageLoader.load(getImagePath(), UIUtils.MAX_IMAGE_HEIGHT,
+				priority);
+		request.whenComplete((image, e) -> {
+			if (request.isCancelled())
+				return;
+			if (image != null) {
+				scaledImageIcon = new ImageIcon(image);
+				isLoaded = true;
+			} else if (ImageLoader.isPermanentFailure(e)) {
+				/**
+				 * The picture has been deleted from the server, or is broken and cannot be
+				 * parsed. In this case, we still consider the image loaded, notify the
+				 * observers and let them to notify the user to avoid re-accessing later.
+				 */
+				isLoaded = true;
 			}
-		}.start();
+			SwingUtilities.invokeLater(() -> {
+				setChanged();
+				notifyObservers(null);
+			});
+		});
+		return request;
+	}
+
+	/**
+	 * Path of the image on the server, for ImageLoader.
+	 */
+	public String getImagePath() {
+		return PKUHoleAPI.PKU_HOLE_PIC_PATH + url;
 	}
 
 	public boolean isLoaded() {
 		return isLoaded;
 	}
 
+	/**
+	 * Take the image of an earlier copy of this topic, e.g. one fetched before
+	 * a refresh, if it is of the same picture and has loaded.
+	 */
+	public void adoptImage(Topic other) {
+		if (isLoaded || !other.isLoaded || type != TopicType.IMAGE || !Objects.equals(url, other.url))
+			return;
+		scaledImageIcon = other.scaledImageIcon;
+		isLoaded = true;
+	}
+
 }
@@ -19,7 +19,7 @@ public class User {
 	}
 
 	public String toFormattedString() {
-		return String.format("ǰû\nѧţ\t%d\n\t%s\nԺϵ\t%s", id, name, department);
+		return String.format("当前用户：\n学号：\t%d\n姓名：\t%s\n院系：\t%s", id, name, department);
 	}
 
 }
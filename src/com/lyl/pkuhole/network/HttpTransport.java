@@ -0,0 +1,299 @@
+package com.lyl.pkuhole.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.DefaultBHttpClientConnection;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.pool.BasicConnPool;
+import org.apache.http.impl.pool.BasicPoolEntry;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.pool.ConnFactory;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.protocol.RequestConnControl;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestTargetHost;
+import org.apache.http.protocol.RequestUserAgent;
+import org.apache.http.util.EntityUtils;
+
+import com.lyl.pkuhole.exception.HttpStatusException;
+import com.lyl.pkuhole.exception.PKUHoleException;
+
+/**
+ * 带连接池的HTTP传输层，所有与服务器的通信都经过这里。
+ *
+ * Built on the blocking client primitives of httpcore rather than on
+ * HttpClient, because HttpClient needs commons-logging at runtime and we don't
+ * ship it. Connections are kept alive and reused per route (host:port), the
+ * number of connections per route is bounded, and every response body is fully
+ * consumed before its connection goes back to the pool.
+ */
+public class HttpTransport {
+
+	public static final String USER_AGENT = "okhttp/3.4.1";
+
+	private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	private static final int DEFAULT_READ_TIMEOUT = 15000;
+	private static final int DEFAULT_MAX_PER_ROUTE = 4;
+	private static final int DEFAULT_MAX_TOTAL = 16;
+	/**
+	 * How long an idle connection may be reused when the server doesn't tell us
+	 * via the Keep-Alive header.
+	 */
+	private static final long DEFAULT_KEEP_ALIVE_MILLIS = 5000;
+	/**
+	 * Connections idle for longer than this are checked for staleness before
+	 * being leased again.
+	 */
+	private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private static volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private static volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+	private static final BasicConnPool pool = new BasicConnPool(new SocketConnFactory());
+	private static final HttpProcessor processor = HttpProcessorBuilder.create().add(new RequestContent())
+			.add(new RequestTargetHost()).add(new RequestConnControl()).add(new RequestUserAgent(USER_AGENT))
+			.build();
+	private static final HttpRequestExecutor executor = new HttpRequestExecutor();
+	private static final ConnectionReuseStrategy reuseStrategy = DefaultConnectionReuseStrategy.INSTANCE;
+
+	/**
+	 * Connection each thread is currently using, so that a cancelled request can
+	 * be aborted while it is blocked in a socket read.
+	 */
+	private static final Map<Thread, HttpClientConnection> active = new ConcurrentHashMap<Thread, HttpClientConnection>();
+
+	static {
+		pool.setDefaultMaxPerRoute(DEFAULT_MAX_PER_ROUTE);
+		pool.setMaxTotal(DEFAULT_MAX_TOTAL);
+		pool.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+	}
+
+	/**
+	 * Reads the body of a successful (200) response. The stream must not be
+	 * closed by the reader; whatever is left unread is drained by the transport
+	 * so that the connection can be reused.
+	 */
+	public static interface ResponseReader<T> {
+
+		T read(InputStream in) throws IOException, PKUHoleException;
+
+	}
+
+	/**
+	 * 设置建立连接的超时时间
+	 *
+	 * @param millis
+	 *            超时时间(毫秒)，0表示不限
+	 */
+	public static void setConnectTimeout(int millis) {
+		connectTimeout = millis;
+	}
+
+	/**
+	 * 设置读取数据的超时时间
+	 *
+	 * @param millis
+	 *            超时时间(毫秒)，0表示不限
+	 */
+	public static void setReadTimeout(int millis) {
+		readTimeout = millis;
+	}
+
+	/**
+	 * 设置连接池大小
+	 *
+	 * @param maxPerRoute
+	 *            每个主机的最大连接数
+	 * @param maxTotal
+	 *            总最大连接数
+	 */
+	public static void setPoolSize(int maxPerRoute, int maxTotal) {
+		pool.setDefaultMaxPerRoute(maxPerRoute);
+		pool.setMaxTotal(maxTotal);
+	}
+
+	/**
+	 * Perform HTTP GET.
+	 *
+	 * @param uri
+	 *            absolute URI
+	 * @param reader
+	 *            reader of the response body
+	 * @return value returned by the reader
+	 * @throws PKUHoleException
+	 */
+	public static <T> T get(URI uri, ResponseReader<T> reader) throws PKUHoleException {
+		return execute(uri, new BasicHttpRequest("GET", requestTarget(uri)), reader);
+	}
+
+	/**
+	 * Perform HTTP POST.
+	 *
+	 * @param uri
+	 *            absolute URI
+	 * @param entity
+	 *            request body
+	 * @param reader
+	 *            reader of the response body
+	 * @return value returned by the reader
+	 * @throws PKUHoleException
+	 */
+	public static <T> T post(URI uri, HttpEntity entity, ResponseReader<T> reader) throws PKUHoleException {
+		BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", requestTarget(uri));
+		request.setEntity(entity);
+		return execute(uri, request, reader);
+	}
+
+	private static String requestTarget(URI uri) {
+		String path = uri.getRawPath();
+		if (path == null || path.isEmpty())
+			path = "/";
+		String query = uri.getRawQuery();
+		return query == null ? path : path + "?" + query;
+	}
+
+	private static <T> T execute(URI uri, HttpRequest request, ResponseReader<T> reader) throws PKUHoleException {
+		HttpHost host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+		BasicPoolEntry entry = lease(host);
+		boolean reusable = false;
+		HttpClientConnection conn = entry.getConnection();
+		active.put(Thread.currentThread(), conn);
+		try {
+			conn.setSocketTimeout(readTimeout);
+			HttpCoreContext context = HttpCoreContext.create();
+			context.setTargetHost(host);
+			executor.preProcess(request, processor, context);
+			HttpResponse response = executor.execute(request, conn, context);
+			executor.postProcess(response, processor, context);
+
+			int status = response.getStatusLine().getStatusCode();
+			if (status != 200) {
+				throw new HttpStatusException(status,
+						String.format("网络连接失败(%d): %s", status, response.getStatusLine().getReasonPhrase()));
+			}
+			HttpEntity entity = response.getEntity();
+			if (entity == null)
+				throw new PKUHoleException("网络不畅！");
+			T result = reader.read(entity.getContent());
+			if (reuseStrategy.keepAlive(response, context)) {
+				// Drain whatever the reader left so the connection stays usable.
+				try {
+					EntityUtils.consume(entity);
+					entry.updateExpiry(keepAliveMillis(response), TimeUnit.MILLISECONDS);
+					reusable = true;
+				} catch (IOException e) {
+					// The result is complete; just don't reuse this connection.
+				}
+			}
+			return result;
+		} catch (IOException | HttpException e) {
+			if (Thread.currentThread().isInterrupted())
+				throw new PKUHoleException(IOExecutor.CANCELLED_MESSAGE);
+			throw new PKUHoleException("网络不畅！");
+		} finally {
+			active.remove(Thread.currentThread());
+			if (!reusable)
+				entry.close();
+			pool.release(entry, reusable);
+		}
+	}
+
+	/**
+	 * Shut down the connection the thread is using, making its blocked read or
+	 * write fail at once. The connection is not returned to the pool.
+	 */
+	public static void abort(Thread thread) {
+		HttpClientConnection conn = active.get(thread);
+		if (conn != null) {
+			try {
+				conn.shutdown();
+			} catch (IOException e) {
+				// Nothing more can be done.
+			}
+		}
+	}
+
+	private static BasicPoolEntry lease(HttpHost host) throws PKUHoleException {
+		pool.closeExpired();
+		try {
+			int timeout = connectTimeout;
+			if (timeout > 0)
+				return pool.lease(host, null).get(timeout, TimeUnit.MILLISECONDS);
+			else
+				return pool.lease(host, null).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PKUHoleException(IOExecutor.CANCELLED_MESSAGE);
+		} catch (ExecutionException | TimeoutException e) {
+			throw new PKUHoleException("网络不畅！");
+		}
+	}
+
+	/**
+	 * Honour "Keep-Alive: timeout=N" if the server sends one.
+	 */
+	private static long keepAliveMillis(HttpResponse response) {
+		Header header = response.getFirstHeader("Keep-Alive");
+		if (header != null) {
+			for (HeaderElement element : header.getElements()) {
+				if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+					try {
+						return Long.parseLong(element.getValue().trim()) * 1000;
+					} catch (NumberFormatException e) {
+						break;
+					}
+				}
+			}
+		}
+		return DEFAULT_KEEP_ALIVE_MILLIS;
+	}
+
+	/**
+	 * Opens plain sockets with the currently configured timeouts.
+	 */
+	private static class SocketConnFactory implements ConnFactory<HttpHost, HttpClientConnection> {
+
+		@Override
+		public HttpClientConnection create(HttpHost host) throws IOException {
+			int port = host.getPort() < 0 ? 80 : host.getPort();
+			Socket socket = new Socket();
+			try {
+				socket.setTcpNoDelay(true);
+				socket.setKeepAlive(true);
+				socket.setSoTimeout(readTimeout);
+				socket.connect(new InetSocketAddress(host.getHostName(), port), connectTimeout);
+				DefaultBHttpClientConnection conn = new DefaultBHttpClientConnection(BUFFER_SIZE);
+				conn.bind(socket);
+				return conn;
+			} catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,219 @@
+package com.lyl.pkuhole.network;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.lyl.pkuhole.exception.PKUHoleException;
+
+/**
+ * 网络请求线程池。
+ *
+ * A small fixed pool of daemon threads named "pkuhole-io-N" on which all the
+ * asynchronous API calls run. Futures returned by {@link #submit(Call)}
+ * complete exceptionally with the original {@link PKUHoleException}, and
+ * cancelling one interrupts its thread and shuts down the connection it is
+ * blocked on, so a superseded request stops using the network at once.
+ */
+public class IOExecutor {
+
+	public static final String CANCELLED_MESSAGE = "请求已取消";
+
+	private static final int THREADS = 4;
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, KEEP_ALIVE_SECONDS,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("pkuhole-io"));
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * A blocking call to be run on the I/O pool.
+	 */
+	public static interface Call<T> {
+
+		T call() throws PKUHoleException;
+
+	}
+
+	/**
+	 * Run the call on the I/O pool.
+	 *
+	 * @return a future that can be cancelled with cancel(true)
+	 */
+	public static <T> CompletableFuture<T> submit(Call<T> call) {
+		return submit(call, executor);
+	}
+
+	/**
+	 * Run the call on another executor, e.g. one of its own for CPU-bound work
+	 * that should not hold up the network, with the same futures as
+	 * {@link #submit(Call)}.
+	 */
+	public static <T> CompletableFuture<T> submit(Call<T> call, ThreadPoolExecutor executor) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		Task<T> task = new Task<T>(call, future);
+		future.whenComplete((result, e) -> {
+			if (future.isCancelled()) {
+				task.abort();
+				executor.remove(task);
+			}
+		});
+		executor.execute(task);
+		return future;
+	}
+
+	/**
+	 * Like future.thenApply(fn), but cancelling the returned future cancels
+	 * the source too, so that the call stops as with a future from submit.
+	 */
+	public static <T, U> CompletableFuture<U> map(CompletableFuture<T> future, Function<? super T, ? extends U> fn) {
+		CompletableFuture<U> result = future.thenApply(fn);
+		result.whenComplete((r, e) -> {
+			if (result.isCancelled())
+				future.cancel(true);
+		});
+		return result;
+	}
+
+	/**
+	 * Like future.thenCompose(fn), but cancelling the returned future cancels
+	 * the future fn returned, if it has run. The source is left alone, as it
+	 * may have other users.
+	 */
+	public static <T, U> CompletableFuture<U> compose(CompletableFuture<T> future,
+			Function<? super T, ? extends CompletableFuture<U>> fn) {
+		CompletableFuture<U> result = new CompletableFuture<U>();
+		future.whenComplete((value, e) -> {
+			if (e != null) {
+				result.completeExceptionally(e);
+				return;
+			}
+			CompletableFuture<U> next;
+			try {
+				next = fn.apply(value);
+			} catch (Throwable x) {
+				result.completeExceptionally(x);
+				return;
+			}
+			result.whenComplete((r, x) -> {
+				if (result.isCancelled())
+					next.cancel(true);
+			});
+			next.whenComplete((r, x) -> {
+				if (x != null)
+					result.completeExceptionally(x);
+				else
+					result.complete(r);
+			});
+		});
+		return result;
+	}
+
+	/**
+	 * Wait for the future and rethrow its failure as a PKUHoleException.
+	 */
+	public static <T> T await(CompletableFuture<T> future) throws PKUHoleException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PKUHoleException(CANCELLED_MESSAGE);
+		} catch (ExecutionException | CancellationException e) {
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Turn the throwable a future completed with into a PKUHoleException.
+	 */
+	public static PKUHoleException unwrap(Throwable e) {
+		while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null)
+			e = e.getCause();
+		if (e instanceof PKUHoleException)
+			return (PKUHoleException) e;
+		if (e instanceof CancellationException)
+			return new PKUHoleException(CANCELLED_MESSAGE);
+		return new PKUHoleException(String.valueOf(e));
+	}
+
+	/**
+	 * Whether the throwable a future completed with means it was cancelled.
+	 */
+	public static boolean isCancellation(Throwable e) {
+		while (e instanceof CompletionException && e.getCause() != null)
+			e = e.getCause();
+		return e instanceof CancellationException;
+	}
+
+	private static class Task<T> implements Runnable {
+
+		private final Call<T> call;
+		private final CompletableFuture<T> future;
+
+		private Thread runner;
+
+		Task(Call<T> call, CompletableFuture<T> future) {
+			this.call = call;
+			this.future = future;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (future.isDone())
+					return;
+				runner = Thread.currentThread();
+			}
+			try {
+				future.complete(call.call());
+			} catch (Throwable e) {
+				// Errors too, e.g. running out of memory decoding an image: a
+				// future left incomplete would keep its view loading forever.
+				future.completeExceptionally(e);
+			} finally {
+				synchronized (this) {
+					runner = null;
+					// Don't leak a late interrupt into the next task.
+					Thread.interrupted();
+				}
+			}
+		}
+
+		synchronized void abort() {
+			if (runner != null) {
+				runner.interrupt();
+				HttpTransport.abort(runner);
+			}
+		}
+
+	}
+
+	public static class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		public NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
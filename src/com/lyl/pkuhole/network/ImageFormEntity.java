@@ -0,0 +1,69 @@
+package com.lyl.pkuhole.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.lyl.pkuhole.image.CompressedImage;
+import com.lyl.pkuhole.utils.BASE64Utils;
+import com.lyl.pkuhole.utils.URLEncodingOutputStream;
+
+/**
+ * 上传图片用的表单请求体。
+ * 
+ * An application/x-www-form-urlencoded body whose last field is an image,
+ * encoded as URL-encoded BASE64. It is sent with chunked transfer encoding and
+ * the image is encoded while it is being written to the connection, so no
+ * copy of the image is made. The entity is not repeatable.
+ */
+public class ImageFormEntity extends AbstractHttpEntity {
+
+	private final byte[] form;
+	private final CompressedImage image;
+	private final ProgressListener listener;
+
+	/**
+	 * @param form
+	 *            URL-encoded form, ending with the name of the image field and
+	 *            '=', e.g. "token=...&data="
+	 * @param listener
+	 *            上传进度，可为null
+	 */
+	public ImageFormEntity(byte[] form, CompressedImage image, ProgressListener listener) {
+		this.form = form;
+		this.image = image;
+		this.listener = listener;
+		setContentType("application/x-www-form-urlencoded");
+		setChunked(true);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public InputStream getContent() {
+		throw new UnsupportedOperationException("ImageFormEntity can only be written");
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(form);
+		BASE64Utils.write(image.data, new URLEncodingOutputStream(out), listener);
+		out.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+}
@@ -0,0 +1,15 @@
+package com.lyl.pkuhole.network;
+
+/**
+ * 进度回调。Called on the thread doing the work, not on the event dispatch
+ * thread.
+ */
+public interface ProgressListener {
+
+	/**
+	 * @param percent
+	 *            0~100
+	 */
+	void onProgress(int percent);
+
+}
@@ -0,0 +1,110 @@
+package com.lyl.pkuhole.network;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并相同的并发请求。
+ *
+ * Concurrent calls with the same key share one execution: the first caller
+ * (the leader) runs the call, later callers get its result instead of going
+ * to the network again. Keys should identify the request completely,
+ * e.g. the action and all of its arguments. Only use this for idempotent
+ * requests.
+ */
+public class RequestCoalescer {
+
+	private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong deduplicatedCount = new AtomicLong();
+
+	/**
+	 * Run the call on the I/O pool, or join the identical call already in
+	 * flight. Joining takes no thread: the returned future completes when the
+	 * leader's does.
+	 *
+	 * Cancelling the leader's future interrupts the call; the futures of the
+	 * callers that joined it are not cancelled, one of them becomes the new
+	 * leader and runs the call again. Cancelling a joined future only detaches
+	 * that caller.
+	 */
+	public <T> CompletableFuture<T> submit(String key, IOExecutor.Call<T> call) {
+		requestCount.incrementAndGet();
+		return join(key, call);
+	}
+
+	private <T> CompletableFuture<T> join(String key, IOExecutor.Call<T> call) {
+		CompletableFuture<Object> shared = new CompletableFuture<Object>();
+		CompletableFuture<Object> existing = inFlight.putIfAbsent(key, shared);
+		if (existing == null)
+			return lead(key, shared, call);
+		deduplicatedCount.incrementAndGet();
+		return follow(key, existing, call);
+	}
+
+	private <T> CompletableFuture<T> lead(String key, CompletableFuture<Object> shared, IOExecutor.Call<T> call) {
+		CompletableFuture<T> future = IOExecutor.submit(call);
+		future.whenComplete((result, e) -> {
+			inFlight.remove(key, shared);
+			if (future.isCancelled())
+				shared.cancel(false);
+			else if (e != null)
+				shared.completeExceptionally(e);
+			else
+				shared.complete(result);
+		});
+		return future;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> follow(String key, CompletableFuture<Object> shared, IOExecutor.Call<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		shared.whenComplete((result, e) -> {
+			if (future.isDone())
+				return;
+			if (shared.isCancelled()) {
+				// The leader was cancelled; try again.
+				deduplicatedCount.decrementAndGet();
+				CompletableFuture<T> retry = join(key, call);
+				future.whenComplete((r, x) -> {
+					if (future.isCancelled())
+						retry.cancel(true);
+				});
+				retry.whenComplete((r, x) -> {
+					if (x != null)
+						future.completeExceptionally(x);
+					else
+						future.complete(r);
+				});
+			} else if (e != null) {
+				future.completeExceptionally(e);
+			} else {
+				future.complete((T) result);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Number of calls made through this coalescer.
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Number of calls that were served by another call already in flight.
+	 */
+	public long getDeduplicatedCount() {
+		return deduplicatedCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RequestCoalescer[requests=%d, deduplicated=%d, inFlight=%d]", getRequestCount(),
+				getDeduplicatedCount(), inFlight.size());
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.lyl.pkuhole.network;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 服务器响应的内存缓存。
+ *
+ * A size-bounded LRU map from request key to decoded response. Every entry has
+ * two deadlines: until freshUntil it is served as is; until staleUntil it is
+ * still served, but a background revalidation is started so that the next
+ * caller gets fresh data (stale-while-revalidate). After staleUntil it is
+ * gone.
+ *
+ * Views are not told about a revalidated entry; they pick up the fresh data
+ * the next time they load it.
+ *
+ * Invalidating a key also stamps it, so that a response to a request made
+ * before the invalidation is not put back: callers take the stamp of the key
+ * when they start a request and pass it to put. Stamps of single keys are kept
+ * for good; only keys that are invalidated, i.e. changed by the user, get one.
+ */
+public class ResponseCache {
+
+	private final int maxEntries;
+	private final LinkedHashMap<String, CacheEntry> map;
+
+	// Last invalidation of a key, and of the keys starting with a prefix.
+	private long lastStamp;
+	private final Map<String, Long> keyStamps = new HashMap<String, Long>();
+	private final Map<String, Long> prefixStamps = new HashMap<String, Long>();
+
+	public ResponseCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.map = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				return size() > ResponseCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Look up a response.
+	 *
+	 * @param revalidator
+	 *            if the entry is stale, called to start refreshing it in the
+	 *            background; it is expected to put the new response back into
+	 *            this cache
+	 * @return the cached response, fresh or stale, or null
+	 */
+	public synchronized Object get(String key, Supplier<? extends CompletableFuture<?>> revalidator) {
+		CacheEntry entry = map.get(key);
+		long now = System.currentTimeMillis();
+		if (entry == null || now >= entry.staleUntil) {
+			if (entry != null)
+				map.remove(key);
+			return null;
+		}
+		if (now < entry.freshUntil)
+			return entry.value;
+		if (!entry.revalidating && revalidator != null) {
+			entry.revalidating = true;
+			revalidator.get().whenComplete((result, e) -> {
+				synchronized (ResponseCache.this) {
+					entry.revalidating = false;
+				}
+			});
+		}
+		return entry.value;
+	}
+
+	/**
+	 * @param stamp
+	 *            getStamp(key) when the request was made; if the key has been
+	 *            invalidated since, the response is dropped
+	 * @param freshMillis
+	 *            how long the response is served without revalidation
+	 * @param staleMillis
+	 *            how much longer it may be served while being revalidated
+	 */
+	public synchronized void put(String key, Object value, long stamp, long freshMillis, long staleMillis) {
+		if (freshMillis <= 0 && staleMillis <= 0 || getStamp(key) != stamp)
+			return;
+		long now = System.currentTimeMillis();
+		map.put(key, new CacheEntry(value, now + freshMillis, now + freshMillis + staleMillis));
+	}
+
+	/**
+	 * Stamp of the last invalidation of the key, directly or by prefix; 0 if
+	 * it has never been invalidated.
+	 */
+	public synchronized long getStamp(String key) {
+		Long stamp = keyStamps.get(key);
+		long result = stamp == null ? 0 : stamp;
+		for (Map.Entry<String, Long> entry : prefixStamps.entrySet())
+			if (key.startsWith(entry.getKey()))
+				result = Math.max(result, entry.getValue());
+		return result;
+	}
+
+	public synchronized void invalidate(String key) {
+		map.remove(key);
+		keyStamps.put(key, ++lastStamp);
+	}
+
+	/**
+	 * Invalidate every key that starts with the prefix, cached or not.
+	 */
+	public synchronized void invalidatePrefix(String prefix) {
+		for (Iterator<String> it = map.keySet().iterator(); it.hasNext();)
+			if (it.next().startsWith(prefix))
+				it.remove();
+		prefixStamps.put(prefix, ++lastStamp);
+	}
+
+	public synchronized void clear() {
+		map.clear();
+	}
+
+	private static class CacheEntry {
+
+		final Object value;
+		final long freshUntil;
+		final long staleUntil;
+		boolean revalidating;
+
+		CacheEntry(Object value, long freshUntil, long staleUntil) {
+			this.value = value;
+			this.freshUntil = freshUntil;
+			this.staleUntil = staleUntil;
+		}
+
+	}
+
+}
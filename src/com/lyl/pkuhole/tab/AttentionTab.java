@@ -14,19 +14,28 @@ import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
 
 import com.lyl.pkuhole.PKUHole;
+import com.lyl.pkuhole.PKUHoleAPI;
 import com.lyl.pkuhole.model.AttentionManager;
 import com.lyl.pkuhole.model.Topic;
+import com.lyl.pkuhole.model.User;
+import com.lyl.pkuhole.utils.UIUtils;
+import com.lyl.pkuhole.utils.ViewLoader;
+import com.lyl.pkuhole.widgets.BusyIndicator;
+import com.lyl.pkuhole.widgets.HoleCellFactory;
 import com.lyl.pkuhole.widgets.VerticalList;
 
 public class AttentionTab extends JPanel implements Observer {
 
 	// Components for header
 	private JButton refresh;
+	private BusyIndicator busy;
+	private ViewLoader loader;
 	// Panel for header
 	private JPanel header;
 	// VerticalList for Topics
 	private VerticalList topicList;
 	private JScrollPane scrollPane;
+	private HoleCellFactory cellFactory;
 
 	public AttentionTab() {
 		PKUHole.getInstance().addObserver(this);
@@ -37,9 +46,12 @@ public class AttentionTab extends JPanel implements Observer {
 	}
 
 	public void initComponent() {
-		refresh = new JButton("ˢ");
+		refresh = new JButton("刷新");
+		busy = new BusyIndicator();
+		loader = new ViewLoader(busy);
 
 		topicList = new VerticalList();
+		cellFactory = new HoleCellFactory(true);
 		scrollPane = new JScrollPane(topicList);
 		scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
 		scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
@@ -57,6 +69,11 @@ public class AttentionTab extends JPanel implements Observer {
 		gbc.insets = new Insets(0, 40, 0, 40);
 		gb.setConstraints(refresh, gbc);
 		header.add(refresh);
+		// BusyIndicator busy
+		gbc.weightx = 1;
+		gbc.anchor = GridBagConstraints.EAST;
+		gb.setConstraints(busy, gbc);
+		header.add(busy);
 		// Layout of header finished.
 		setLayout(new BorderLayout());
 		add(header, BorderLayout.SOUTH);
@@ -65,24 +82,34 @@ public class AttentionTab extends JPanel implements Observer {
 
 	public void initEvent() {
 		refresh.addActionListener(e -> {
-			AttentionManager.getAttentionList();
-			topicList.removeAll();
-			load();
+			User user = PKUHole.getInstance().user;
+			if (user == null)
+				return;
+			loader.load(PKUHoleAPI.getAttentionTopicsAsync(user.token), topics -> {
+				if (topics != null)
+					AttentionManager.setAttentionList(topics);
+				load();
+			}, err -> {
+				UIUtils.messageBox("获取关注列表失败！原因：" + err.getMessage());
+			});
 		});
 	}
 
+	/**
+	 * Show the attention list; topics already on display that haven't changed
+	 * keep their cells.
+	 */
 	private void load() {
 		List<Topic> topics = AttentionManager.topicList;
 		if (topics == null)
 			return;
-		for (Topic topic : topics)
-			topicList.addItem(topic.getCell(true));
-		topicList.commit();
+		topicList.updateItems(topics, cellFactory);
 	}
 
 	@Override
 	public void update(Observable o, Object arg) {
 		if (PKUHole.getInstance().user == null) {
+			loader.cancel();
 			topicList.removeAll();
 		} else {
 			load();
@@ -4,8 +4,16 @@ import java.awt.BorderLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -15,19 +23,36 @@ import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 
 import com.lyl.pkuhole.PKUHoleAPI;
-import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.image.NegativeImageCache;
 import com.lyl.pkuhole.model.Topic;
+import com.lyl.pkuhole.utils.PagePrefetcher;
 import com.lyl.pkuhole.utils.UIUtils;
+import com.lyl.pkuhole.utils.ViewLoader;
+import com.lyl.pkuhole.widgets.BusyIndicator;
+import com.lyl.pkuhole.widgets.HoleCellFactory;
 import com.lyl.pkuhole.widgets.VerticalList;
 
+/**
+ * 树洞列表。
+ * 
+ * Shows one page at a time, or in continuous mode, pages one after another:
+ * the next page is fetched when the viewport gets within one screen of the
+ * bottom, and the previous one when it gets near the top. At most
+ * MAX_RETAINED_PAGES are kept; going further drops the page at the other end,
+ * to be fetched again if the user scrolls back to it.
+ */
 public class HoleTab extends JPanel {
 
 	private static final int MAX_PAGE_NUM = 100000;
+	private static final int MAX_RETAINED_PAGES = 10;
+	// After a failed page, continuous mode waits this long before trying again.
+	private static final long RETRY_DELAY = 10 * 1000;
 
 	// Components for header
 	private JButton left, right, go, refresh;
 	private JLabel page;
 	private JSpinner spinner;
+	private JCheckBox continuous;
 	// Container for JButton left, JLabel page and JButton right.
 	private JPanel panel;
 	// Panel for header
@@ -35,8 +60,28 @@ public class HoleTab extends JPanel {
 	// VerticalList for Topics
 	private VerticalList topicList;
 	private JScrollPane scrollPane;
+	private HoleCellFactory cellFactory;
 
+	private BusyIndicator busy;
+	private ViewLoader loader;
+	// Loads pages around those on display in continuous mode.
+	private ViewLoader moreLoader;
+	private PagePrefetcher prefetcher;
+
+	// Page on display, and the page being loaded (equal to pageNum when idle).
 	private int pageNum;
+	private int loadingPage;
+
+	// Pages in the list, and the number of topics each added to it.
+	private int firstPage, lastPage;
+	private Deque<Integer> pageSizes = new ArrayDeque<Integer>();
+	// Topics in the list; pages shift as topics are posted, so a page fetched
+	// later may repeat some of the one before.
+	private Set<Integer> shownPids = new HashSet<Integer>();
+	private long retryTime;
+	// An empty page was found below or above those on display: the feed ends
+	// there, and continuous mode stops loading in that direction.
+	private boolean endBelow, endAbove;
 
 	public HoleTab() {
 		initComponent();
@@ -46,13 +91,18 @@ public class HoleTab extends JPanel {
 	}
 
 	private void initComponent() {
-		left = new JButton("");
-		right = new JButton("");
-		go = new JButton("ת");
-		refresh = new JButton("ˢ");
-		page = new JLabel("" + pageNum + "ҳ");
+		left = new JButton("←");
+		right = new JButton("→");
+		go = new JButton("跳转");
+		refresh = new JButton("刷新");
+		page = new JLabel("第" + pageNum + "页");
 		page.setHorizontalAlignment(SwingConstants.CENTER);
 		spinner = new JSpinner(new SpinnerNumberModel(1, 1, MAX_PAGE_NUM, 1));
+		continuous = new JCheckBox("连续滚动");
+		busy = new BusyIndicator();
+		loader = new ViewLoader(busy);
+		moreLoader = new ViewLoader(busy);
+		prefetcher = new PagePrefetcher(MAX_PAGE_NUM, busy::isBusy);
 
 		panel = new JPanel();
 		GridBagLayout gb = new GridBagLayout();
@@ -69,6 +119,7 @@ public class HoleTab extends JPanel {
 		panel.add(right);
 
 		topicList = new VerticalList();
+		cellFactory = new HoleCellFactory(true);
 		scrollPane = new JScrollPane(topicList);
 		scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
 		scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
@@ -83,18 +134,27 @@ public class HoleTab extends JPanel {
 		gbc.fill = GridBagConstraints.NONE;
 		// JButton fresh
 		gbc.anchor = GridBagConstraints.WEST;
-		gbc.insets = new Insets(0, 40, 0, 40);
+		gbc.insets = new Insets(0, 40, 0, 0);
 		gb.setConstraints(refresh, gbc);
 		header.add(refresh);
+		// JCheckBox continuous
+		gbc.insets = new Insets(0, 20, 0, 40);
+		gb.setConstraints(continuous, gbc);
+		header.add(continuous);
 		// JPanel panel
 		gbc.insets = new Insets(0, 0, 0, 0);
 		gbc.weightx = 1;
 		gbc.anchor = GridBagConstraints.CENTER;
 		gb.setConstraints(panel, gbc);
 		header.add(panel);
-		// JSpinner spinner
+		// BusyIndicator busy
 		gbc.weightx = 0;
 		gbc.anchor = GridBagConstraints.EAST;
+		gbc.insets = new Insets(0, 0, 0, 20);
+		gb.setConstraints(busy, gbc);
+		header.add(busy);
+		// JSpinner spinner
+		gbc.insets = new Insets(0, 0, 0, 0);
 		gb.setConstraints(spinner, gbc);
 		header.add(spinner);
 		// JButton go
@@ -109,52 +169,180 @@ public class HoleTab extends JPanel {
 
 	private void initEvent() {
 		refresh.addActionListener(e -> {
+			PKUHoleAPI.invalidateTopics(pageNum);
+			NegativeImageCache.clearTransient();
 			loadPage(pageNum);
 		});
 		left.addActionListener(e -> {
-			setPageNum(pageNum - 1);
+			if (loadingPage > 1)
+				setPageNum(loadingPage - 1);
 		});
 		right.addActionListener(e -> {
-			setPageNum(pageNum + 1);
+			if (loadingPage < MAX_PAGE_NUM)
+				setPageNum(loadingPage + 1);
 		});
 		go.addActionListener(e -> {
 			setPageNum((int) spinner.getValue());
 		});
+		continuous.addActionListener(e -> {
+			if (continuous.isSelected()) {
+				retryTime = 0;
+				endBelow = endAbove = false;
+				loadMoreIfNeeded();
+			} else
+				moreLoader.cancel();
+		});
+		scrollPane.getViewport().addChangeListener(e -> loadMoreIfNeeded());
 	}
 
 	private void setPageNum(int newPageNum) {
-		if (newPageNum == pageNum)
+		if (newPageNum == pageNum) {
+			// Going back to the page on display drops any load in flight.
+			loader.cancel();
+			loadingPage = pageNum;
 			return;
-		if (loadPage(newPageNum)) {
-			page.setText("" + newPageNum + "ҳ");
-			if (newPageNum == 1)
-				left.setEnabled(false);
-			else
-				left.setEnabled(true);
-			if (newPageNum == MAX_PAGE_NUM)
-				right.setEnabled(false);
-			else
-				right.setEnabled(true);
-			pageNum = newPageNum;
 		}
+		prefetcher.pageRequested(newPageNum);
+		loadPage(newPageNum);
+	}
+
+	private void showPageNum(int newPageNum) {
+		page.setText(pageText(newPageNum));
+		if (newPageNum == 1)
+			left.setEnabled(false);
+		else
+			left.setEnabled(true);
+		if (newPageNum == MAX_PAGE_NUM)
+			right.setEnabled(false);
+		else
+			right.setEnabled(true);
+		pageNum = newPageNum;
+		page.setToolTipText(String.format("预取命中率：%.0f%%", prefetcher.getHitRate() * 100));
+	}
+
+	private String pageText(int pageNum) {
+		if (firstPage != lastPage)
+			return "第" + firstPage + "-" + lastPage + "页";
+		else
+			return "第" + pageNum + "页";
+	}
+
+	/**
+	 * 在后台加载页面。Cells are built as topics arrive and the old page stays on
+	 * display until the new one is complete; a later call supersedes this one.
+	 */
+	private void loadPage(int newPageNum) {
+		loadingPage = newPageNum;
+		moreLoader.cancel();
+		List<Topic> topics = new ArrayList<Topic>();
+		loader.<Topic, Integer>stream(consumer -> PKUHoleAPI.getTopicsAsync(newPageNum, consumer), topic -> {
+			topics.add(topic);
+		}, count -> {
+			if (topics.isEmpty()) {
+				loadingPage = pageNum;
+				UIUtils.messageBox("操作失败，该页面为空！");
+				return;
+			}
+			showTopics(topics, newPageNum);
+			showPageNum(newPageNum);
+			prefetcher.pageShown(newPageNum);
+		}, e -> {
+			loadingPage = pageNum;
+			UIUtils.messageBox("加载页面失败！原因：" + e.getMessage());
+		});
+	}
+
+	/**
+	 * Show the page alone. If it is the page on display, e.g. on refresh, only
+	 * the topics that changed are updated.
+	 */
+	private void showTopics(List<Topic> topics, int newPageNum) {
+		boolean same = pageSizes.size() == 1 && firstPage == newPageNum;
+		firstPage = lastPage = newPageNum;
+		pageSizes.clear();
+		pageSizes.add(topics.size());
+		shownPids.clear();
+		for (Topic topic : topics)
+			shownPids.add(topic.pid);
+		retryTime = 0;
+		endBelow = endAbove = false;
+		if (same)
+			topicList.updateItems(topics, cellFactory);
+		else
+			topicList.setItems(topics, cellFactory);
 	}
 
-	private boolean loadPage(int pageNum) {
-		try {
-			Topic[] topics = PKUHoleAPI.getTopics(pageNum);
+	/**
+	 * In continuous mode, fetch the page below or above those on display if
+	 * the viewport is within one screen of the end of the list.
+	 */
+	private void loadMoreIfNeeded() {
+		if (!continuous.isSelected() || loader.isLoading() || moreLoader.isLoading() || pageSizes.isEmpty())
+			return;
+		if (System.currentTimeMillis() < retryTime)
+			return;
+		Rectangle view = scrollPane.getViewport().getViewRect();
+		if (view.height <= 0)
+			return;
+		if (view.y + view.height * 2 >= topicList.getPreferredSize().height && lastPage < MAX_PAGE_NUM && !endBelow)
+			loadMore(lastPage + 1);
+		else if (view.y < view.height && firstPage > 1 && !endAbove)
+			loadMore(firstPage - 1);
+	}
+
+	private void loadMore(int newPageNum) {
+		prefetcher.pageRequested(newPageNum);
+		moreLoader.load(PKUHoleAPI.getTopicsAsync(newPageNum), topics -> {
 			if (topics == null || topics.length == 0) {
-				UIUtils.messageBox("ʧܣҳΪգ");
-				return false;
+				// Past the end of the feed: keep the pages on display as they are.
+				if (newPageNum > lastPage)
+					endBelow = true;
+				else
+					endAbove = true;
+				return;
 			}
-			topicList.removeAll();
-			for (Topic topic : topics) {
-				topicList.addItem(topic.getCell(true));
+			// A page whose topics have all been shown already, as pages shift
+			// while the user reads, is not the end; it just adds nothing.
+			List<Topic> fresh = new ArrayList<Topic>();
+			for (Topic topic : topics)
+				if (shownPids.add(topic.pid))
+					fresh.add(topic);
+			if (newPageNum > lastPage) {
+				topicList.appendItems(fresh);
+				pageSizes.addLast(fresh.size());
+				lastPage = newPageNum;
+				if (pageSizes.size() > MAX_RETAINED_PAGES) {
+					removeTopics(0, pageSizes.removeFirst());
+					firstPage++;
+				}
+			} else {
+				topicList.prependItems(fresh);
+				pageSizes.addFirst(fresh.size());
+				firstPage = newPageNum;
+				if (pageSizes.size() > MAX_RETAINED_PAGES) {
+					int count = pageSizes.removeLast();
+					removeTopics(topicList.getItemCount() - count, count);
+					lastPage--;
+				}
 			}
-			topicList.commit();
-		} catch (PKUHoleException e) {
-			UIUtils.messageBox("ҳʧܣԭ" + e.getMessage());
-		}
-		return true;
+			showPageNum(firstPage);
+			prefetcher.pageShown(newPageNum);
+			// A short page may leave the viewport near the end still.
+			loadMoreIfNeeded();
+		}, e -> {
+			retryTime = System.currentTimeMillis() + RETRY_DELAY;
+			// Shown on the page label rather than in a dialog, which would pop up
+			// again every RETRY_DELAY while the network is down. The next page
+			// shown clears it.
+			page.setText(pageText(pageNum) + "（加载失败）");
+			page.setToolTipText("加载页面失败！原因：" + e.getMessage() + "，稍后自动重试");
+		});
+	}
+
+	private void removeTopics(int from, int count) {
+		for (int i = from; i < from + count; i++)
+			shownPids.remove(((Topic) topicList.getItem(i)).pid);
+		topicList.removeItems(from, count);
 	}
 
 }
@@ -10,7 +10,10 @@ import java.awt.Insets;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
@@ -21,6 +24,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 import javax.swing.border.TitledBorder;
 import javax.swing.filechooser.FileFilter;
 
@@ -28,12 +32,14 @@ import org.apache.http.util.TextUtils;
 
 import com.lyl.pkuhole.PKUHole;
 import com.lyl.pkuhole.PKUHoleAPI;
-import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.image.CompressedImage;
+import com.lyl.pkuhole.image.ImageCompressor;
 import com.lyl.pkuhole.model.AttentionManager;
-import com.lyl.pkuhole.model.Topic;
 import com.lyl.pkuhole.model.User;
-import com.lyl.pkuhole.utils.BASE64Utils;
+import com.lyl.pkuhole.network.IOExecutor;
 import com.lyl.pkuhole.utils.UIUtils;
+import com.lyl.pkuhole.utils.ViewLoader;
+import com.lyl.pkuhole.widgets.BusyIndicator;
 
 public class PostTab extends JPanel {
 
@@ -41,18 +47,38 @@ public class PostTab extends JPanel {
 
 	private static final Font LargeFont = new Font(Font.SANS_SERIF, Font.PLAIN, 22);
 
-	private static final String HintNoPicture = "ǰͼƬ", HintPreviewPicture = "ͼƬԤ", HintSelectedPicture = "ѡͼƬ";
+	/**
+	 * Compression is CPU-bound and may take seconds: it gets a thread of its own
+	 * rather than one of the I/O pool.
+	 */
+	private static final ThreadPoolExecutor compressExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new IOExecutor.NamedThreadFactory("pkuhole-compress"));
+
+	static {
+		compressExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	private static final String HintNoPicture = "当前无图片。", HintPreviewPicture = "图片预览：", HintSelectedPicture = "已选择图片：";
 
 	private JTextArea text;
 	private JButton post, addPic, removePic;
 	private JLabel imageHint, imageLabel;
 	private JPanel buttonPanel;
+	private BusyIndicator busy;
+	private ViewLoader loader;
+	private ViewLoader compressLoader;
 
 	private JPanel content;
 
 	private BufferedImage image;
 	private BufferedImage imagePreview;
 
+	private ImageCompressor compressor;
+	// Compression of image, started as soon as it is selected.
+	private CompletableFuture<CompressedImage> compression;
+	// Sizes before and after compression, shown after HintSelectedPicture.
+	private String imageInfo;
+
 	public PostTab() {
 		initComponent();
 		initLayout();
@@ -66,16 +92,20 @@ public class PostTab extends JPanel {
 		text.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.ORANGE, 5), "#??????",
 				TitledBorder.LEFT, TitledBorder.TOP, BorderTitleFont));
 		text.setFont(LargeFont);
-		post = new JButton("");
+		post = new JButton("发表");
 		post.setFont(LargeFont);
-		addPic = new JButton("ͼƬ");
+		addPic = new JButton("添加图片");
 		addPic.setFont(LargeFont);
-		removePic = new JButton("ɾͼƬ");
+		removePic = new JButton("删除图片");
 		removePic.setFont(LargeFont);
 		removePic.setVisible(false);
 		imageHint = new JLabel(HintNoPicture);
 		imageHint.setFont(LargeFont);
 		imageLabel = new JLabel();
+		busy = new BusyIndicator();
+		loader = new ViewLoader(busy);
+		compressLoader = new ViewLoader(busy);
+		compressor = new ImageCompressor();
 
 		// JPanel buttonPanel
 		buttonPanel = new JPanel();
@@ -92,6 +122,8 @@ public class PostTab extends JPanel {
 		buttonPanel.add(addPic);
 		gb.setConstraints(removePic, gbc);
 		buttonPanel.add(removePic);
+		gb.setConstraints(busy, gbc);
+		buttonPanel.add(busy);
 
 		content = new JPanel();
 	}
@@ -140,57 +172,94 @@ public class PostTab extends JPanel {
 			User user = PKUHole.getInstance().user;
 			if (user == null) {
 				// If invalidateUser() works properly, control should never reach here.
-				UIUtils.messageBox("ʧܣȵ¼");
+				UIUtils.messageBox("操作失败，请先登录！");
 				return;
 			}
 			String content = text.getText().trim();
 			if (TextUtils.isEmpty(content) && image == null) {
-				UIUtils.messageBox("ݻѡͼƬ");
+				UIUtils.messageBox("请输入内容或选择图片！");
 				return;
 			}
+			post.setEnabled(false);
 			if (image == null) {
-				// 
-				try {
-					int pid = PKUHoleAPI.sendTextPost(user.token, content);
+				// 文字树洞
+				loader.load(PKUHoleAPI.sendTextPostAsync(user.token, content), pid -> {
+					post.setEnabled(true);
 					reset();
-					Topic topic = PKUHoleAPI.getSingleTopic(pid);
-					AttentionManager.addAttentionTopic(topic);
-					UIUtils.messageBox("ɹΪ" + pid);
-				} catch (PKUHoleException err) {
-					UIUtils.messageBox("ʧܣԭ" + err.getMessage());
-				}
+					PKUHoleAPI.getSingleTopicAsync(pid).thenAccept(topic -> SwingUtilities.invokeLater(() -> {
+						if (topic != null)
+							AttentionManager.addAttentionTopic(topic);
+					}));
+					UIUtils.messageBox("发表成功！树洞号为" + pid);
+				}, err -> {
+					post.setEnabled(true);
+					UIUtils.messageBox("发表失败！原因：" + err.getMessage());
+				});
 			} else {
-				// ͼƬ
-				try {
-					// ҪBASE64룬URLEncode(Э飬URLEncodeȫʡ)
-					PKUHoleAPI.sendImagePost(user.token, content, URLEncoder.encode(BASE64Utils.imageToString(image)));
-					// ͼƬԶע()
-					UIUtils.messageBox("ɹڷ⣬ͼƬԶעҳֶע");
+				// 图片树洞：压缩完成后边编码边上传(BASE64后再URLEncode，垃圾协议)
+				CompletableFuture<Void> upload = IOExecutor.compose(compression,
+						compressed -> PKUHoleAPI.sendImagePostAsync(user.token, content, compressed,
+								percent -> SwingUtilities.invokeLater(() -> busy.setProgress(percent))));
+				loader.load(upload, result -> {
+					post.setEnabled(true);
+					// 发表图片树洞后服务器不会自动关注(垃圾服务器)
+					UIUtils.messageBox("发表成功！由于服务器问题，发表图片树洞不会自动关注，请打开树洞详情页手动关注");
 					reset();
-				} catch (PKUHoleException err) {
-					UIUtils.messageBox("ʧܣԭ" + err.getMessage());
-				}
+				}, err -> {
+					post.setEnabled(true);
+					UIUtils.messageBox("发表失败！原因：" + err.getMessage());
+				});
 			}
 		});
 		addPic.addActionListener(e -> {
 			chooseImage();
 		});
 		removePic.addActionListener(e -> {
-			image = null;
-			imageLabel.setIcon(null);
-			imageHint.setText(HintNoPicture);
-			addPic.setText("ͼƬ");
-			removePic.setVisible(false);
+			removeImage();
 		});
 	}
 
 	private void reset() {
 		text.setText(null);
-		addPic.setText("ͼƬ");
-		removePic.setVisible(false);
-		imageHint.setText(HintNoPicture);
-		imageLabel.setIcon(null);
+		removeImage();
+	}
+
+	private void removeImage() {
+		compressLoader.cancel();
+		compression = null;
 		image = null;
+		imageLabel.setIcon(null);
+		imageHint.setText(HintNoPicture);
+		addPic.setText("添加图片");
+		removePic.setVisible(false);
+	}
+
+	/**
+	 * 在后台压缩选中的图片，完成后显示压缩前后的大小
+	 */
+	private void compressImage(BufferedImage image, long fileSize) {
+		CompletableFuture<CompressedImage> future = IOExecutor.submit(() -> compressor.compress(image),
+				compressExecutor);
+		compression = future;
+		imageInfo = "正在压缩...";
+		imageHint.setText(HintSelectedPicture + imageInfo);
+		compressLoader.load(future, result -> {
+			imageInfo = String.format("原图%d×%d, %s → 上传%d×%d %s, %s", result.originalWidth,
+					result.originalHeight, formatSize(fileSize), result.width, result.height,
+					result.format.toUpperCase(), formatSize(result.data.length));
+			imageHint.setText(HintSelectedPicture + imageInfo);
+		}, e -> {
+			imageInfo = "压缩失败！原因：" + e.getMessage();
+			imageHint.setText(HintSelectedPicture + imageInfo);
+		});
+	}
+
+	private static String formatSize(long bytes) {
+		if (bytes < 1024)
+			return bytes + "B";
+		if (bytes < 1024 * 1024)
+			return String.format("%.1fKB", bytes / 1024.0);
+		return String.format("%.1fMB", bytes / (1024.0 * 1024));
 	}
 
 	private void chooseImage() {
@@ -211,15 +280,15 @@ public class PostTab extends JPanel {
 				imageHint.setText(HintPreviewPicture);
 			}
 		});
-		int result = chooser.showDialog(null, "ѡͼƬ");
+		int result = chooser.showDialog(null, "选择图片");
 		if (result == JFileChooser.APPROVE_OPTION) {
 			if (imagePreview == null) {
-				UIUtils.messageBox("ͼƬʧܣԭУͼƬʽͼƬļ𻵣ͼƬȡѡ");
+				UIUtils.messageBox("图片加载失败！原因可能有：图片格式错误，图片文件损坏，图片过大等。请重新选择。");
 				restorePreviousImage();
 			} else {
-				imageHint.setText(HintSelectedPicture);
 				image = imagePreview;
-				addPic.setText("ͼƬ");
+				compressImage(image, chooser.getSelectedFile().length());
+				addPic.setText("更改图片");
 				removePic.setVisible(true);
 				imagePreview = null;
 			}
@@ -233,7 +302,7 @@ public class PostTab extends JPanel {
 			imageHint.setText(HintNoPicture);
 			imageLabel.setIcon(null);
 		} else {
-			imageHint.setText(HintSelectedPicture);
+			imageHint.setText(HintSelectedPicture + imageInfo);
 			setImage(image);
 		}
 	}
@@ -4,6 +4,9 @@ import java.awt.BorderLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JComboBox;
@@ -16,27 +19,32 @@ import javax.swing.ScrollPaneConstants;
 import org.apache.http.util.TextUtils;
 
 import com.lyl.pkuhole.PKUHoleAPI;
-import com.lyl.pkuhole.exception.PKUHoleException;
 import com.lyl.pkuhole.model.Topic;
 import com.lyl.pkuhole.utils.UIUtils;
+import com.lyl.pkuhole.utils.ViewLoader;
+import com.lyl.pkuhole.widgets.BusyIndicator;
+import com.lyl.pkuhole.widgets.HoleCellFactory;
 import com.lyl.pkuhole.widgets.VerticalList;
 
 public class SearchTab extends JPanel {
 
 	private static final int MAX_PAGE_SIZE = 100;
 
-	private static final String[] SearchHintString = new String[] { "ݣ", "ţ#" };
-	private static final String[] SearchTypeString = new String[] { "", "" };
+	private static final String[] SearchHintString = new String[] { "搜索内容：", "树洞号：#" };
+	private static final String[] SearchTypeString = new String[] { "根据内容搜索", "根据树洞号搜索" };
 
 	// Components for header
 	private JLabel searchHint;
 	private JTextField searchText;
 	private JComboBox<String> searchType;
 	private JButton search;
+	private BusyIndicator busy;
+	private ViewLoader loader;
 	// Panel for header
 	private JPanel header;
 	// VerticalList for Topics
 	private VerticalList topicList;
+	private HoleCellFactory cellFactory;
 	private JScrollPane scrollPane;
 
 	public SearchTab() {
@@ -46,12 +54,15 @@ public class SearchTab extends JPanel {
 	}
 
 	private void initComponent() {
-		searchHint = new JLabel("ݣ");
+		searchHint = new JLabel("搜索内容：");
 		searchText = new JTextField();
 		searchType = new JComboBox<String>(SearchTypeString);
-		search = new JButton("");
+		search = new JButton("搜索");
+		busy = new BusyIndicator();
+		loader = new ViewLoader(busy);
 
 		topicList = new VerticalList();
+		cellFactory = new HoleCellFactory(true);
 		scrollPane = new JScrollPane(topicList);
 		scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
 		scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
@@ -82,6 +93,10 @@ public class SearchTab extends JPanel {
 		// JButton search
 		gb.setConstraints(search, gbc);
 		header.add(search);
+		// BusyIndicator busy
+		gbc.insets = new Insets(0, 20, 0, 0);
+		gb.setConstraints(busy, gbc);
+		header.add(busy);
 		// Layout of header finished.
 		setLayout(new BorderLayout());
 		add(header, BorderLayout.SOUTH);
@@ -95,7 +110,7 @@ public class SearchTab extends JPanel {
 		search.addActionListener(e -> {
 			String s = searchText.getText().trim();
 			if (TextUtils.isEmpty(s)) {
-				UIUtils.messageBox("ݣ");
+				UIUtils.messageBox("请输入搜索内容！");
 				return;
 			}
 			if (searchType.getSelectedIndex() == 0) {
@@ -107,39 +122,39 @@ public class SearchTab extends JPanel {
 	}
 
 	private void searchByText(String s) {
-		try {
-			Topic[] topics = PKUHoleAPI.searchTopics(s, MAX_PAGE_SIZE);
-			if (topics == null || topics.length == 0) {
-				UIUtils.messageBox("");
+		List<Topic> topics = new ArrayList<Topic>();
+		loader.<Topic, Integer>stream(consumer -> PKUHoleAPI.searchTopicsAsync(s, MAX_PAGE_SIZE, consumer), topic -> {
+			topics.add(topic);
+		}, count -> {
+			if (topics.isEmpty()) {
+				UIUtils.messageBox("无搜索结果！");
 				return;
 			}
-			topicList.removeAll();
-			for (Topic topic : topics)
-				topicList.addItem(topic.getCell(true));
-			topicList.commit();
-			if (topics.length == MAX_PAGE_SIZE)
-				UIUtils.messageBox("ֻ࣡ʾ100");
-		} catch (PKUHoleException e) {
-			UIUtils.messageBox("ʧܣԭ" + e.getMessage());
-		}
+			topicList.setItems(topics, cellFactory);
+			if (count == MAX_PAGE_SIZE)
+				UIUtils.messageBox("搜索结果过多！只显示最近100条。");
+		}, e -> {
+			UIUtils.messageBox("搜索失败！原因：" + e.getMessage());
+		});
 	}
 
 	private void searchByPid(String s) {
+		int pid;
 		try {
-			int pid = Integer.parseInt(s);
-			Topic topic = PKUHoleAPI.getSingleTopic(pid);
+			pid = Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			UIUtils.messageBox("请输入数字！");
+			return;
+		}
+		loader.load(PKUHoleAPI.getSingleTopicAsync(pid), topic -> {
 			if (topic == null) {
-				UIUtils.messageBox("");
+				UIUtils.messageBox("无搜索结果！");
 				return;
 			}
-			topicList.removeAll();
-			topicList.addItem(topic.getCell(true));
-			topicList.commit();
-		} catch (NumberFormatException e) {
-			UIUtils.messageBox("֣");
-		} catch (PKUHoleException e) {
-			UIUtils.messageBox("ʧܣԭ" + e.getMessage());
-		}
+			topicList.setItems(Collections.singletonList(topic), cellFactory);
+		}, e -> {
+			UIUtils.messageBox("搜索失败！原因：" + e.getMessage());
+		});
 	}
 
 }
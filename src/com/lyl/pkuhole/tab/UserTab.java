@@ -20,7 +20,7 @@ public class UserTab extends JPanel implements Observer {
 
 	private static final Font LargeFont = new Font(Font.SANS_SERIF, Font.PLAIN, 24);
 
-	private static final String UserGuestString = "ǰû\n\tο";
+	private static final String UserGuestString = "当前用户：\n\t游客";
 
 	private JTextArea text;
 	private JButton button;
@@ -39,7 +39,7 @@ public class UserTab extends JPanel implements Observer {
 		text.setFont(LargeFont);
 		text.setEditable(false);
 
-		button = new JButton("¼");
+		button = new JButton("登录");
 		button.setFont(LargeFont);
 	}
 
@@ -64,7 +64,7 @@ public class UserTab extends JPanel implements Observer {
 
 	private void initEvent() {
 		button.addActionListener(e -> {
-			if (button.getText() == "¼")
+			if (button.getText() == "登录")
 				doLogin();
 			else
 				doLogout();
@@ -78,17 +78,17 @@ public class UserTab extends JPanel implements Observer {
 	private void doLogout() {
 		PKUHole.getInstance().user = null;
 		PKUHole.getInstance().notifyUserChanged();
-		UIUtils.messageBox("ǳɹ");
+		UIUtils.messageBox("登出成功！");
 	}
 
 	@Override
 	public void update(Observable o, Object arg) {
 		if (PKUHole.getInstance().user == null) {
 			text.setText(UserGuestString);
-			button.setText("¼");
+			button.setText("登录");
 		} else {
 			text.setText(PKUHole.getInstance().user.toFormattedString());
-			button.setText("ǳ");
+			button.setText("登出");
 		}
 	}
 }
@@ -1,32 +1,57 @@
 package com.lyl.pkuhole.utils;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Base64;
 
-import javax.imageio.ImageIO;
+import com.lyl.pkuhole.network.ProgressListener;
 
-import com.lyl.pkuhole.exception.PKUHoleException;
+public class BASE64Utils {
 
-import sun.misc.BASE64Encoder;
+	private static final int CHUNK_SIZE = 8 * 1024;
 
-public class BASE64Utils {
+	/**
+	 * 将数据以BASE64编码写入输出流。
+	 * 
+	 * The data is encoded a chunk at a time as it is written, so the encoded
+	 * form is never held in memory as a whole. The output stream is not closed.
+	 * 
+	 * @param listener
+	 *            写入进度，可为null
+	 * @throws IOException
+	 *             写入输出流失败，或被中断
+	 */
+	public static void write(byte[] data, OutputStream out, ProgressListener listener) throws IOException {
+		// Base64 must be closed to write its padding; the stream below it keeps out open.
+		try (OutputStream base64 = Base64.getEncoder().wrap(new NonClosingOutputStream(out))) {
+			for (int off = 0; off < data.length; off += CHUNK_SIZE) {
+				if (Thread.currentThread().isInterrupted())
+					throw new InterruptedIOException();
+				base64.write(data, off, Math.min(CHUNK_SIZE, data.length - off));
+				if (listener != null)
+					listener.onProgress((int) ((long) Math.min(off + CHUNK_SIZE, data.length) * 100 / data.length));
+			}
+		}
+	}
+
+	private static class NonClosingOutputStream extends FilterOutputStream {
 
-	public static String imageToString(BufferedImage image) throws PKUHoleException {
-		BASE64Encoder encoder = new BASE64Encoder();
-		ByteArrayOutputStream output = new ByteArrayOutputStream();
-		try {
-			ImageIO.write(image, "png", output);
-		} catch (IOException e) {
-			throw new PKUHoleException("ͼƬתʧܣ");
+		NonClosingOutputStream(OutputStream out) {
+			super(out);
 		}
-		try {
-			output.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
 		}
-		byte[] result = output.toByteArray();
-		return encoder.encode(result);
+
 	}
 
 }
@@ -0,0 +1,61 @@
+package com.lyl.pkuhole.utils;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.lyl.pkuhole.model.Comment;
+
+public class CommentAdapter extends TypeAdapter<Comment> {
+
+	@Override
+	public Comment read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		Comment comment = new Comment();
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+			case "pid":
+				comment.pid = JsonUtils.nextInt(in, comment.pid);
+				break;
+			case "cid":
+				comment.cid = JsonUtils.nextLong(in, comment.cid);
+				break;
+			case "timestamp":
+				comment.timestamp = JsonUtils.nextLong(in, comment.timestamp);
+				break;
+			case "name":
+				comment.name = JsonUtils.nextString(in);
+				break;
+			case "text":
+				comment.text = JsonUtils.nextString(in);
+				break;
+			default:
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return comment;
+	}
+
+	@Override
+	public void write(JsonWriter out, Comment comment) throws IOException {
+		if (comment == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("pid").value(comment.pid);
+		out.name("cid").value(comment.cid);
+		out.name("timestamp").value(comment.timestamp);
+		out.name("name").value(comment.name);
+		out.name("text").value(comment.text);
+		out.endObject();
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.lyl.pkuhole.utils;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+public class JsonUtils {
+
+	/**
+	 * Read a string the way Gson's built-in String adapter does: null stays
+	 * null, booleans and numbers are turned into their literal text.
+	 */
+	public static String nextString(JsonReader in) throws IOException {
+		JsonToken token = in.peek();
+		if (token == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		if (token == JsonToken.BOOLEAN)
+			return Boolean.toString(in.nextBoolean());
+		return in.nextString();
+	}
+
+	/**
+	 * Read an int, or return the default when the value is null.
+	 */
+	public static int nextInt(JsonReader in, int defaultValue) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return defaultValue;
+		}
+		return in.nextInt();
+	}
+
+	/**
+	 * Read a long, or return the default when the value is null.
+	 */
+	public static long nextLong(JsonReader in, long defaultValue) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return defaultValue;
+		}
+		return in.nextLong();
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.lyl.pkuhole.utils;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import com.lyl.pkuhole.PKUHoleAPI;
+import com.lyl.pkuhole.image.ImageLoader;
+import com.lyl.pkuhole.model.Topic;
+import com.lyl.pkuhole.model.TopicType;
+import com.lyl.pkuhole.network.IOExecutor;
+
+/**
+ * 树洞列表的预取器。
+ *
+ * Shortly after a page is shown, the next page in the direction the user is
+ * going is fetched in the background, which leaves it in the response cache,
+ * and the images of its first screen of topics are loaded at PREFETCH
+ * priority, which leaves them in the image cache. Going on to that page is
+ * then served without waiting for the network.
+ *
+ * Prefetching only ever follows a page the user asked for, so an idle user
+ * costs no traffic. Page requests share the I/O threads with the user's own,
+ * so a prefetch waits while the view is still loading anything. If a prefetch fails or the network is slow, prefetching
+ * stops for a while, twice as long after each further failure; a fast
+ * prefetch resets the delay. All methods must be called on the EDT.
+ */
+public class PagePrefetcher {
+
+	private static final int START_DELAY = 1000;
+	private static final long SLOW_MILLIS = 3000;
+	private static final long MIN_BACKOFF = 10 * 1000;
+	private static final long MAX_BACKOFF = 10 * 60 * 1000;
+	// A prefetched page older than this is counted as a miss: the response
+	// cache keeps deep pages for 30 minutes.
+	private static final long PREFETCH_LIFETIME = 30 * 60 * 1000;
+	private static final int FIRST_SCREEN_TOPICS = 5;
+	// Number of pages fetched ahead.
+	private static final int DEPTH = 1;
+
+	private final int maxPage;
+	private final BooleanSupplier busy;
+	private final Timer timer;
+
+	private int lastPage;
+	private int direction = 1;
+
+	// Page -> when its prefetch finished.
+	private final Map<Integer, Long> prefetched = new HashMap<Integer, Long>();
+	private final List<CompletableFuture<BufferedImage>> imageRequests = new ArrayList<CompletableFuture<BufferedImage>>();
+
+	private long backoff;
+	private long backoffUntil;
+
+	private long hitCount, missCount;
+
+	/**
+	 * @param busy
+	 *            whether the view has requests of its own in flight
+	 */
+	public PagePrefetcher(int maxPage, BooleanSupplier busy) {
+		this.maxPage = maxPage;
+		this.busy = busy;
+		timer = new Timer(START_DELAY, e -> prefetch());
+		timer.setRepeats(false);
+	}
+
+	/**
+	 * The user asked for the page: counts a hit if it has been prefetched.
+	 */
+	public void pageRequested(int page) {
+		timer.stop();
+		Long time = prefetched.remove(page);
+		if (lastPage != 0 && page != lastPage) {
+			if (time != null && System.currentTimeMillis() - time < PREFETCH_LIFETIME)
+				hitCount++;
+			else
+				missCount++;
+			direction = page < lastPage ? -1 : 1;
+		}
+	}
+
+	/**
+	 * The page has been shown: prefetch around it once it has settled.
+	 */
+	public void pageShown(int page) {
+		lastPage = page;
+		timer.restart();
+	}
+
+	private void prefetch() {
+		// Images still loading for an earlier page are no longer needed; the
+		// cells of the page on display have made their own requests by now.
+		cancelImages();
+		if (System.currentTimeMillis() < backoffUntil)
+			return;
+		if (busy.getAsBoolean()) {
+			timer.restart();
+			return;
+		}
+		for (int i = 1; i <= DEPTH; i++) {
+			int page = lastPage + direction * i;
+			if (page < 1 || page > maxPage)
+				break;
+			prefetchPage(page);
+		}
+	}
+
+	private void prefetchPage(int page) {
+		long start = System.currentTimeMillis();
+		PKUHoleAPI.getTopicsAsync(page).whenComplete((topics, e) -> SwingUtilities.invokeLater(() -> {
+			if (topics == null) {
+				if (!IOExecutor.isCancellation(e))
+					backOff();
+				return;
+			}
+			prefetched.put(page, System.currentTimeMillis());
+			if (System.currentTimeMillis() - start > SLOW_MILLIS) {
+				// The page is cached anyway, but don't add images to a slow network.
+				backOff();
+				return;
+			}
+			backoff = 0;
+			prefetchImages(topics);
+		}));
+	}
+
+	private void prefetchImages(Topic[] topics) {
+		for (int i = 0; i < topics.length && i < FIRST_SCREEN_TOPICS; i++) {
+			if (topics[i].type != TopicType.IMAGE)
+				continue;
+			CompletableFuture<BufferedImage> request = ImageLoader.load(topics[i].getImagePath(),
+					UIUtils.MAX_IMAGE_HEIGHT, ImageLoader.Priority.PREFETCH);
+			if (request.isDone())
+				continue;
+			imageRequests.add(request);
+			request.whenComplete((image, e) -> SwingUtilities.invokeLater(() -> imageRequests.remove(request)));
+		}
+	}
+
+	private void cancelImages() {
+		for (CompletableFuture<BufferedImage> request : new ArrayList<CompletableFuture<BufferedImage>>(imageRequests))
+			request.cancel(true);
+		imageRequests.clear();
+	}
+
+	private void backOff() {
+		backoff = backoff == 0 ? MIN_BACKOFF : Math.min(backoff * 2, MAX_BACKOFF);
+		backoffUntil = System.currentTimeMillis() + backoff;
+	}
+
+	/**
+	 * Share of the pages the user went to that had been prefetched, between 0
+	 * and 1.
+	 */
+	public double getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+}
@@ -0,0 +1,235 @@
+package com.lyl.pkuhole.utils;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.font.FontRenderContext;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.swing.JComponent;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+
+/**
+ * 文本换行排版的缓存。
+ *
+ * A layout is the text broken into lines for a width, the way a line-wrapped
+ * JTextArea without word wrap breaks it: each line takes as many characters as
+ * fit, and at least one. Laying out long text again on every layout pass is
+ * what makes lists of text cells slow, so layouts are kept by text, font and
+ * width, and only made again when one of them changes.
+ *
+ * Layouts are made with the FontMetrics the caller passes, which should be
+ * those of the component that shows the text, so the result matches it to the
+ * pixel. FontMetrics are immutable, so they can be taken on the EDT and used
+ * on a background thread; all methods are thread-safe.
+ */
+public class TextLayoutCache {
+
+	private static final int MAX_LAYOUTS = 4096;
+	// Characters per tab stop, as in JTextArea.
+	private static final int TAB_SIZE = 8;
+	// BasicTextUI lays text out one pixel narrower, leaving room for the caret.
+	private static final int CARET_MARGIN = 1;
+
+	private static final LinkedHashMap<Key, Layout> layouts = new LinkedHashMap<Key, Layout>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Layout> eldest) {
+			return size() > MAX_LAYOUTS;
+		}
+	};
+
+	/**
+	 * 获取文本排版
+	 *
+	 * @param metrics
+	 *            metrics of the font the text is shown in
+	 * @param width
+	 *            width available to the text, without the insets
+	 */
+	public static Layout get(String text, FontMetrics metrics, int width) {
+		Key key = new Key(text, metrics.getFont(), metrics.getFontRenderContext(), width);
+		synchronized (TextLayoutCache.class) {
+			Layout layout = layouts.get(key);
+			if (layout != null)
+				return layout;
+		}
+		// Laid out outside of the lock; two threads may both do it, to the same result.
+		int tabWidth = TAB_SIZE * metrics.charWidth('m');
+		Layout layout = new Layout(text, breakLines(text, metrics, width, tabWidth), metrics.getHeight(),
+				metrics.getAscent(), tabWidth);
+		synchronized (TextLayoutCache.class) {
+			layouts.put(key, layout);
+		}
+		return layout;
+	}
+
+	/**
+	 * Width available to the text of a line-wrapped JTextArea of the width, or
+	 * of a cell that paints its text the same way: the width without the insets
+	 * of the component and the pixel kept for the caret.
+	 */
+	public static int getTextWidth(JComponent c, int width) {
+		Insets insets = c.getInsets();
+		return width - insets.left - insets.right - CARET_MARGIN;
+	}
+
+	/**
+	 * 预先排版。Texts handed to the result are laid out into the cache as the
+	 * component would lay them out at the width, with its current font and
+	 * border; the result may be called on any thread.
+	 * 
+	 * @param width
+	 *            width of the component, insets included
+	 */
+	public static Consumer<String> measurer(JComponent c, int width) {
+		int textWidth = getTextWidth(c, width);
+		FontMetrics metrics = c.getFontMetrics(c.getFont());
+		return t -> {
+			if (textWidth > 0)
+				get(t, metrics, textWidth);
+		};
+	}
+
+	/**
+	 * Offsets where lines start, as WrappedPlainView finds them: a paragraph is
+	 * measured with the line break that ends it, the end of the text counting as
+	 * one.
+	 */
+	private static int[] breakLines(String text, FontMetrics metrics, int width, int tabWidth) {
+		char[] chars = (text + "\n").toCharArray();
+		Segment segment = new Segment(chars, 0, chars.length);
+		TabExpander tabs = (x, offset) -> nextTabStop((int) x, tabWidth);
+		int[] starts = new int[16];
+		int count = 0;
+		for (int p0 = 0; p0 < chars.length;) {
+			int p1 = p0;
+			while (chars[p1] != '\n')
+				p1++;
+			p1++;
+			do {
+				if (count == starts.length)
+					starts = Arrays.copyOf(starts, count * 2);
+				starts[count++] = p0;
+				segment.offset = p0;
+				segment.count = p1 - p0;
+				int p = width <= 0 ? p1 : p0 + Utilities.getTabbedTextOffset(segment, metrics, 0, width, tabs, p0, false);
+				p0 = p == p0 ? p + 1 : p;
+			} while (p0 < p1);
+		}
+		return Arrays.copyOf(starts, count);
+	}
+
+	private static int nextTabStop(int x, int tabWidth) {
+		return tabWidth <= 0 ? x : (x / tabWidth + 1) * tabWidth;
+	}
+
+	/**
+	 * 文本的排版结果
+	 */
+	public static class Layout {
+
+		private final String text;
+		private final int[] lineStarts;
+		private final int lineHeight;
+		private final int ascent;
+		private final int tabWidth;
+
+		Layout(String text, int[] lineStarts, int lineHeight, int ascent, int tabWidth) {
+			this.text = text;
+			this.lineStarts = lineStarts;
+			this.lineHeight = lineHeight;
+			this.ascent = ascent;
+			this.tabWidth = tabWidth;
+		}
+
+		public int getLineCount() {
+			return lineStarts.length;
+		}
+
+		/**
+		 * The line, without the line break it ends with.
+		 */
+		public String getLine(int i) {
+			int end = i + 1 < lineStarts.length ? lineStarts[i + 1] : text.length();
+			if (end > lineStarts[i] && text.charAt(end - 1) == '\n')
+				end--;
+			return text.substring(lineStarts[i], end);
+		}
+
+		public int getLineStart(int i) {
+			return lineStarts[i];
+		}
+
+		public int getLineHeight() {
+			return lineHeight;
+		}
+
+		/**
+		 * Distance from the top of a line to its baseline.
+		 */
+		public int getAscent() {
+			return ascent;
+		}
+
+		public int getHeight() {
+			return lineStarts.length * lineHeight;
+		}
+
+		/**
+		 * Draw the line with the font of the graphics, its tabs expanded to the
+		 * same tab stops as when it was broken.
+		 * 
+		 * @param y
+		 *            baseline of the line
+		 */
+		public void drawLine(Graphics g, int i, int x, int y) {
+			String line = getLine(i);
+			FontMetrics metrics = g.getFontMetrics();
+			int dx = 0;
+			int start = 0;
+			for (int tab; (tab = line.indexOf('\t', start)) != -1; start = tab + 1) {
+				String run = line.substring(start, tab);
+				g.drawString(run, x + dx, y);
+				dx = nextTabStop(dx + metrics.stringWidth(run), tabWidth);
+			}
+			g.drawString(line.substring(start), x + dx, y);
+		}
+
+	}
+
+	private static class Key {
+
+		final String text;
+		final Font font;
+		final FontRenderContext frc;
+		final int width;
+
+		Key(String text, Font font, FontRenderContext frc, int width) {
+			this.text = text;
+			this.font = font;
+			this.frc = frc;
+			this.width = width;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return width == k.width && text.equals(k.text) && font.equals(k.font) && frc.equals(k.frc);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((text.hashCode() * 31 + font.hashCode()) * 31 + frc.hashCode()) * 31 + width;
+		}
+
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.lyl.pkuhole.utils;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.lyl.pkuhole.model.Topic;
+
+public class TopicAdapter extends TypeAdapter<Topic> {
+
+	private final TopicTypeAdapter typeAdapter = new TopicTypeAdapter();
+
+	@Override
+	public Topic read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		Topic topic = new Topic();
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+			case "pid":
+				topic.pid = JsonUtils.nextInt(in, topic.pid);
+				break;
+			case "type":
+				topic.type = typeAdapter.read(in);
+				break;
+			case "text":
+				topic.text = JsonUtils.nextString(in);
+				break;
+			case "timestamp":
+				topic.timestamp = JsonUtils.nextLong(in, topic.timestamp);
+				break;
+			case "reply":
+				topic.reply = JsonUtils.nextInt(in, topic.reply);
+				break;
+			case "likenum":
+				topic.likenum = JsonUtils.nextInt(in, topic.likenum);
+				break;
+			case "url":
+				topic.url = JsonUtils.nextString(in);
+				break;
+			case "extra":
+				topic.extra = JsonUtils.nextLong(in, topic.extra);
+				break;
+			default:
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return topic;
+	}
+
+	@Override
+	public void write(JsonWriter out, Topic topic) throws IOException {
+		if (topic == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("pid").value(topic.pid);
+		out.name("type");
+		typeAdapter.write(out, topic.type);
+		out.name("text").value(topic.text);
+		out.name("timestamp").value(topic.timestamp);
+		out.name("reply").value(topic.reply);
+		out.name("likenum").value(topic.likenum);
+		out.name("url").value(topic.url);
+		out.name("extra").value(topic.extra);
+		out.endObject();
+	}
+
+}
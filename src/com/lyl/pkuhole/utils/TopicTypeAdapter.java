@@ -0,0 +1,43 @@
+package com.lyl.pkuhole.utils;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.lyl.pkuhole.model.TopicType;
+
+public class TopicTypeAdapter extends TypeAdapter<TopicType> {
+
+	@Override
+	public TopicType read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return parse(in.nextString());
+	}
+
+	public static TopicType parse(String typeStr) {
+		switch (typeStr) {
+		case "text":
+			return TopicType.TEXT;
+		case "image":
+			return TopicType.IMAGE;
+		case "audio":
+			return TopicType.AUDIO;
+		default:
+			return TopicType.TEXT;
+		}
+	}
+
+	@Override
+	public void write(JsonWriter out, TopicType value) throws IOException {
+		if (value == null)
+			out.nullValue();
+		else
+			out.value(value.name().toLowerCase());
+	}
+
+}
@@ -38,25 +38,25 @@ public class UIUtils {
 	}
 
 	/**
-	 * ϢԻ
+	 * 简单消息对话框
 	 * 
 	 * @param msg
-	 *            Ϣ
+	 *            消息内容
 	 */
 	public static void messageBox(String msg) {
-		JOptionPane.showMessageDialog(null, msg, "ʾ", JOptionPane.INFORMATION_MESSAGE);
+		JOptionPane.showMessageDialog(null, msg, "提示", JOptionPane.INFORMATION_MESSAGE);
 	}
 
 	/**
-	 * Ի
+	 * 简单输入对话框
 	 * 
 	 * @param msg
-	 *            Ϣ
+	 *            消息内容
 	 * @param hint
-	 *            ʼ
+	 *            输入初始内容
 	 * @param title
-	 *            Ի
-	 * @return ûȷַΪ""򷵻null
+	 *            对话框标题
+	 * @return 如果用户点击确定，返回字符串（可能为""）；否则返回null
 	 */
 	public static String inputBox(String msg, String hint, String title) {
 		JTextArea text = new JTextArea(hint, 5, 50);
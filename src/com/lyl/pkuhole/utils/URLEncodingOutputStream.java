@@ -0,0 +1,61 @@
+package com.lyl.pkuhole.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 对写入的字节进行URL编码(application/x-www-form-urlencoded)的输出流。
+ * 
+ * Works like URLEncoder.encode on the bytes as they pass through, so a form
+ * value can be streamed without building it as a String first. Closing this
+ * stream flushes it but leaves the underlying stream open, as the caller
+ * usually still owns it.
+ */
+public class URLEncodingOutputStream extends FilterOutputStream {
+
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	// Every input byte becomes at most 3 output bytes.
+	private final byte[] buffer = new byte[BUFFER_SIZE * 3];
+
+	public URLEncodingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = Math.min(len, BUFFER_SIZE);
+			int pos = 0;
+			for (int i = off; i < off + n; i++) {
+				int c = b[i] & 0xff;
+				if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_'
+						|| c == '.' || c == '*') {
+					buffer[pos++] = (byte) c;
+				} else if (c == ' ') {
+					buffer[pos++] = '+';
+				} else {
+					buffer[pos++] = '%';
+					buffer[pos++] = HEX[c >> 4];
+					buffer[pos++] = HEX[c & 0xf];
+				}
+			}
+			out.write(buffer, 0, pos);
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.lyl.pkuhole.utils;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.lyl.pkuhole.model.User;
+
+public class UserAdapter extends TypeAdapter<User> {
+
+	@Override
+	public User read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		User user = new User();
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+			case "id":
+				user.id = JsonUtils.nextLong(in, user.id);
+				break;
+			case "token":
+				user.token = JsonUtils.nextString(in);
+				break;
+			case "name":
+				user.name = JsonUtils.nextString(in);
+				break;
+			case "gender":
+				user.gender = JsonUtils.nextString(in);
+				break;
+			case "department":
+				user.department = JsonUtils.nextString(in);
+				break;
+			default:
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return user;
+	}
+
+	@Override
+	public void write(JsonWriter out, User user) throws IOException {
+		if (user == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("id").value(user.id);
+		out.name("token").value(user.token);
+		out.name("name").value(user.name);
+		out.name("gender").value(user.gender);
+		out.name("department").value(user.department);
+		out.endObject();
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.lyl.pkuhole.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.swing.SwingUtilities;
+
+import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.network.IOExecutor;
+import com.lyl.pkuhole.widgets.BusyIndicator;
+
+/**
+ * 视图的后台加载器。
+ * 
+ * A view (tab or window) owns one loader per kind of content it shows. The
+ * request runs on the I/O pool and every callback is delivered on the event
+ * dispatch thread. Starting a new load cancels the one still in flight on the
+ * same loader, and callbacks of a superseded load are dropped, so rapid clicks
+ * never apply stale results. All methods must be called on the EDT.
+ */
+public class ViewLoader {
+
+	private final BusyIndicator indicator;
+
+	private CompletableFuture<?> current;
+	private int generation;
+
+	/**
+	 * @param indicator
+	 *            shown while a load is in flight, may be null
+	 */
+	public ViewLoader(BusyIndicator indicator) {
+		this.indicator = indicator;
+	}
+
+	/**
+	 * Start a load, superseding the previous one.
+	 * 
+	 * @param request
+	 *            the asynchronous request, usually a PKUHoleAPI *Async call
+	 * @param onSuccess
+	 *            called on the EDT with the result
+	 * @param onError
+	 *            called on the EDT if the request fails (but not when it is
+	 *            superseded or cancelled)
+	 */
+	public <T> void load(CompletableFuture<T> request, Consumer<? super T> onSuccess,
+			Consumer<PKUHoleException> onError) {
+		stream(consumer -> request, null, onSuccess, onError);
+	}
+
+	/**
+	 * Start a streaming load, superseding the previous one. Items the request
+	 * hands to its consumer on the I/O thread are batched and replayed on the
+	 * EDT in order, before onSuccess/onError.
+	 * 
+	 * @param request
+	 *            creates the request from the consumer it should feed
+	 * @param onItem
+	 *            called on the EDT for every item
+	 */
+	public <T, R> void stream(Function<Consumer<T>, CompletableFuture<R>> request, Consumer<? super T> onItem,
+			Consumer<? super R> onSuccess, Consumer<PKUHoleException> onError) {
+		cancel();
+		int gen = ++generation;
+		Batch<T> batch = new Batch<T>(gen, onItem);
+		CompletableFuture<R> future = request.apply(batch::add);
+		current = future;
+		if (indicator != null)
+			indicator.begin();
+		future.whenComplete((result, e) -> SwingUtilities.invokeLater(() -> {
+			if (gen != generation)
+				return;
+			current = null;
+			if (indicator != null)
+				indicator.end();
+			batch.drain();
+			if (e == null) {
+				if (onSuccess != null)
+					onSuccess.accept(result);
+			} else if (!IOExecutor.isCancellation(e) && onError != null) {
+				onError.accept(IOExecutor.unwrap(e));
+			}
+		}));
+	}
+
+	/**
+	 * Cancel the load in flight, if any. Its callbacks will never run.
+	 */
+	public void cancel() {
+		generation++;
+		if (current != null) {
+			current.cancel(true);
+			current = null;
+			if (indicator != null)
+				indicator.end();
+		}
+	}
+
+	public boolean isLoading() {
+		return current != null;
+	}
+
+	private class Batch<T> {
+
+		private final int gen;
+		private final Consumer<? super T> onItem;
+		private List<T> pending = new ArrayList<T>();
+
+		Batch(int gen, Consumer<? super T> onItem) {
+			this.gen = gen;
+			this.onItem = onItem;
+		}
+
+		/**
+		 * Called on the I/O thread.
+		 */
+		synchronized void add(T item) {
+			if (onItem == null)
+				return;
+			pending.add(item);
+			if (pending.size() == 1)
+				SwingUtilities.invokeLater(this::drain);
+		}
+
+		/**
+		 * Called on the EDT.
+		 */
+		void drain() {
+			List<T> items;
+			synchronized (this) {
+				if (pending.isEmpty())
+					return;
+				items = pending;
+				pending = new ArrayList<T>();
+			}
+			if (gen != generation)
+				return;
+			for (T item : items)
+				onItem.accept(item);
+		}
+
+	}
+
+}
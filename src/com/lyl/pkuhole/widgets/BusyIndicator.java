@@ -0,0 +1,57 @@
+package com.lyl.pkuhole.widgets;
+
+import java.awt.Dimension;
+
+import javax.swing.JProgressBar;
+
+/**
+ * 加载中指示器：有后台任务时显示为滚动的进度条，否则隐藏。
+ * 
+ * Must only be used on the event dispatch thread.
+ */
+public class BusyIndicator extends JProgressBar {
+
+	private static final Dimension PREFERRED_SIZE = new Dimension(120, 16);
+
+	private int busyCount;
+
+	public BusyIndicator() {
+		setIndeterminate(true);
+		setStringPainted(true);
+		setString("加载中...");
+		setPreferredSize(PREFERRED_SIZE);
+		setVisible(false);
+	}
+
+	public void begin() {
+		if (busyCount++ == 0)
+			setVisible(true);
+	}
+
+	public void end() {
+		if (busyCount > 0 && --busyCount == 0) {
+			setVisible(false);
+			setIndeterminate(true);
+			setString("加载中...");
+		}
+	}
+
+	/**
+	 * 显示具体进度，直到所有后台任务结束
+	 * 
+	 * @param percent
+	 *            0~100
+	 */
+	public void setProgress(int percent) {
+		if (!isBusy())
+			return;
+		setIndeterminate(false);
+		setValue(percent);
+		setString(percent + "%");
+	}
+
+	public boolean isBusy() {
+		return busyCount > 0;
+	}
+
+}
@@ -4,12 +4,11 @@ import java.awt.Color;
 import java.awt.Font;
 
 import javax.swing.BorderFactory;
-import javax.swing.JTextArea;
 import javax.swing.border.TitledBorder;
 
 import com.lyl.pkuhole.model.Comment;
 
-public class CommentCell extends JTextArea implements VerticalList.ListItemListener {
+public class CommentCell extends WrappedTextArea implements VerticalList.ListItemListener {
 
 	private static final Font BorderTitleFont = new Font(Font.SANS_SERIF, Font.BOLD, 18);
 
@@ -20,21 +19,32 @@ public class CommentCell extends JTextArea implements VerticalList.ListItemListe
 	private Comment comment;
 
 	public CommentCell(Comment comment) {
-		this.comment = comment;
+		this();
+		bind(comment);
+	}
+
+	/**
+	 * An empty cell, to be bound to a comment later.
+	 */
+	public CommentCell() {
 		init();
 	}
 
 	private void init() {
-		setEditable(false);
-		setLineWrap(true);
-		setText(comment.toFormattedString());
-
 		border = BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.CYAN, 5), null,
 				TitledBorder.LEFT, TitledBorder.TOP, BorderTitleFont);
-		border.setTitle("#" + comment.cid);
 		setBorder(border);
 	}
 
+	/**
+	 * 显示另一条评论
+	 */
+	public void bind(Comment comment) {
+		this.comment = comment;
+		setText(comment.toFormattedString());
+		border.setTitle("#" + comment.cid);
+	}
+
 	@Override
 	public void onSelected(boolean isSelected) {
 		setBackground(isSelected ? SelectedColor : Color.WHITE);
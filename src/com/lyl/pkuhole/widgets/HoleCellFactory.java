@@ -0,0 +1,118 @@
+package com.lyl.pkuhole.widgets;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import javax.swing.JComponent;
+
+import com.lyl.pkuhole.model.Comment;
+import com.lyl.pkuhole.model.Topic;
+import com.lyl.pkuhole.model.TopicType;
+import com.lyl.pkuhole.utils.TextLayoutCache;
+
+/**
+ * 树洞和评论的组件工厂，用于虚拟化的VerticalList。
+ *
+ * Items are Topics and Comments, keyed by pid and cid. Text topics and
+ * comments get PaintedCells unless asked otherwise, topics with an image the
+ * same cell as Topic.getCell would make.
+ */
+public class HoleCellFactory implements VerticalList.CellFactory<Object> {
+
+	private static final String TOPIC = "topic";
+	private static final String TOPIC_WITH_IMAGE = "topicWithImage";
+	private static final String COMMENT = "comment";
+
+	private final boolean isNewWindowEnabled;
+	private final boolean isPainted;
+
+	/**
+	 * @param isNewWindowEnabled
+	 *            whether clicking a topic opens it in a TopicWindow
+	 */
+	public HoleCellFactory(boolean isNewWindowEnabled) {
+		this(isNewWindowEnabled, true);
+	}
+
+	/**
+	 * @param isPainted
+	 *            whether text topics and comments get PaintedCells rather than
+	 *            text areas
+	 */
+	public HoleCellFactory(boolean isNewWindowEnabled, boolean isPainted) {
+		this.isNewWindowEnabled = isNewWindowEnabled;
+		this.isPainted = isPainted;
+	}
+
+	@Override
+	public Object getCellType(Object item) {
+		if (item instanceof Comment)
+			return COMMENT;
+		TopicType type = ((Topic) item).type;
+		return type == TopicType.TEXT || type == TopicType.AUDIO ? TOPIC : TOPIC_WITH_IMAGE;
+	}
+
+	@Override
+	public JComponent createCell(Object type) {
+		if (type == COMMENT)
+			return isPainted ? new PaintedCommentCell() : new CommentCell();
+		if (type == TOPIC)
+			return isPainted ? new PaintedTopicCell(isNewWindowEnabled) : new TopicCell(isNewWindowEnabled);
+		return new TopicCellWithImage(isNewWindowEnabled);
+	}
+
+	/**
+	 * 预先排版评论。Comments handed to the result are laid out for cells of the
+	 * width, so that the list finds their heights in the TextLayoutCache. Must
+	 * be called on the EDT; the result may be called on any thread.
+	 */
+	public Consumer<Comment> commentMeasurer(int width) {
+		// The title only matters for the border insets.
+		Comment sample = new Comment();
+		sample.text = "";
+		JComponent prototype;
+		if (isPainted) {
+			PaintedCommentCell cell = new PaintedCommentCell();
+			cell.bind(sample);
+			prototype = cell;
+		} else
+			prototype = new CommentCell(sample);
+		Consumer<String> measurer = TextLayoutCache.measurer(prototype, width);
+		return comment -> measurer.accept(comment.toFormattedString());
+	}
+
+	@Override
+	public Object getKey(Object item) {
+		if (item instanceof Comment)
+			return "c" + ((Comment) item).cid;
+		return "p" + ((Topic) item).pid;
+	}
+
+	@Override
+	public boolean isSameContent(Object oldItem, Object newItem) {
+		if (oldItem == newItem)
+			return true;
+		if (oldItem instanceof Comment) {
+			Comment a = (Comment) oldItem, b = (Comment) newItem;
+			return a.timestamp == b.timestamp && Objects.equals(a.name, b.name) && Objects.equals(a.text, b.text);
+		}
+		Topic a = (Topic) oldItem, b = (Topic) newItem;
+		return a.type == b.type && a.timestamp == b.timestamp && a.reply == b.reply && a.likenum == b.likenum
+				&& a.extra == b.extra && Objects.equals(a.text, b.text) && Objects.equals(a.url, b.url);
+	}
+
+	@Override
+	public void bindCell(JComponent cell, Object item) {
+		if (cell instanceof PaintedCommentCell)
+			((PaintedCommentCell) cell).bind((Comment) item);
+		else if (cell instanceof PaintedTopicCell)
+			((PaintedTopicCell) cell).bind((Topic) item);
+		else if (cell instanceof CommentCell)
+			((CommentCell) cell).bind((Comment) item);
+		else if (cell instanceof TopicCell)
+			((TopicCell) cell).bind((Topic) item);
+		else
+			((TopicCellWithImage) cell).bind((Topic) item);
+	}
+
+}
@@ -0,0 +1,196 @@
+package com.lyl.pkuhole.widgets;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Map;
+
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.border.TitledBorder;
+
+import com.lyl.pkuhole.utils.TextLayoutCache;
+
+/**
+ * 直接绘制的文本单元格，用于虚拟化的VerticalList。
+ *
+ * Looks like a TopicCell or CommentCell, but paints its title and text itself
+ * from a TextLayoutCache layout instead of holding a document, views, caret
+ * and input maps, so a cell costs a handful of objects. The text is wrapped
+ * exactly as in those cells.
+ *
+ * While the cell is selected, a WrappedTextArea is laid over the text so that
+ * it can be selected and copied; it goes away with the selection. Double
+ * clicks on it still reach the cell, and the keys of the VerticalList (arrows,
+ * Enter) go on to it, so that the list can still be driven from the keyboard
+ * once the text has the focus; shortcuts such as Ctrl+C stay with the text.
+ */
+public abstract class PaintedCell extends JComponent implements VerticalList.ListItemListener {
+
+	private static final Color SelectedColor = new Color(0xff, 0xff, 0xcc);
+
+	private TitledBorder border;
+	private String text = "";
+	private WrappedTextArea editor;
+
+	protected PaintedCell(Color borderColor, Font titleFont) {
+		border = BorderFactory.createTitledBorder(BorderFactory.createLineBorder(borderColor, 5), null,
+				TitledBorder.LEFT, TitledBorder.TOP, titleFont);
+		setBorder(border);
+		setFont(UIManager.getFont("TextArea.font"));
+		setForeground(UIManager.getColor("TextArea.foreground"));
+		setBackground(Color.WHITE);
+		setOpaque(true);
+		setLayout(null);
+	}
+
+	protected void setTitle(String title) {
+		border.setTitle(title);
+	}
+
+	protected void setText(String text) {
+		this.text = text == null ? "" : text;
+		if (editor != null)
+			editor.setText(this.text);
+		revalidate();
+		repaint();
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet())
+			return super.getPreferredSize();
+		Insets insets = getInsets();
+		TextLayoutCache.Layout layout = getLayout(getWidth());
+		int height = layout == null ? 0 : layout.getHeight();
+		return new Dimension(getWidth(), height + insets.top + insets.bottom);
+	}
+
+	/**
+	 * The layout of the text in a cell of the width, as the editor lays it out;
+	 * null if it is too narrow.
+	 */
+	private TextLayoutCache.Layout getLayout(int width) {
+		int textWidth = TextLayoutCache.getTextWidth(this, width);
+		return textWidth <= 0 ? null : TextLayoutCache.get(text, getFontMetrics(getFont()), textWidth);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		if (isOpaque()) {
+			g.setColor(getBackground());
+			g.fillRect(0, 0, getWidth(), getHeight());
+		}
+		if (editor != null)
+			return;
+		TextLayoutCache.Layout layout = getLayout(getWidth());
+		if (layout == null)
+			return;
+		Graphics2D g2 = (Graphics2D) g.create();
+		try {
+			// Text is drawn the way the desktop draws it, as Swing text components do.
+			Map<?, ?> hints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+			if (hints != null)
+				g2.addRenderingHints(hints);
+			else
+				g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT);
+			g2.setFont(getFont());
+			g2.setColor(getForeground());
+			Insets insets = getInsets();
+			Rectangle clip = g.getClipBounds();
+			if (clip == null)
+				clip = new Rectangle(0, 0, getWidth(), getHeight());
+			int lineHeight = layout.getLineHeight();
+			int first = Math.max(0, (clip.y - insets.top) / lineHeight);
+			for (int i = first; i < layout.getLineCount(); i++) {
+				int y = insets.top + i * lineHeight;
+				if (y >= clip.y + clip.height)
+					break;
+				layout.drawLine(g2, i, insets.left, y + layout.getAscent());
+			}
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	@Override
+	public void doLayout() {
+		if (editor != null) {
+			Insets insets = getInsets();
+			editor.setBounds(insets.left, insets.top, getWidth() - insets.left - insets.right,
+					getHeight() - insets.top - insets.bottom);
+		}
+	}
+
+	@Override
+	public void onSelected(boolean isSelected) {
+		setBackground(isSelected ? SelectedColor : Color.WHITE);
+		if (isSelected)
+			showEditor();
+		else
+			hideEditor();
+	}
+
+	private void showEditor() {
+		if (editor != null)
+			return;
+		editor = new WrappedTextArea();
+		editor.setBorder(null);
+		editor.setOpaque(false);
+		editor.setFont(getFont());
+		editor.setForeground(getForeground());
+		editor.setText(text);
+		editor.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				// Single clicks select text; double clicks open the item as on the cell.
+				if (e.getClickCount() >= 2)
+					dispatchEvent(SwingUtilities.convertMouseEvent(editor, e, PaintedCell.this));
+			}
+		});
+		editor.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				VerticalList list = getList();
+				if (list != null && !e.isControlDown() && !e.isMetaDown() && list.handleKey(e))
+					e.consume();
+			}
+		});
+		add(editor);
+		doLayout();
+		repaint();
+	}
+
+	private void hideEditor() {
+		if (editor == null)
+			return;
+		boolean focused = editor.isFocusOwner();
+		remove(editor);
+		editor = null;
+		repaint();
+		VerticalList list = getList();
+		if (focused && list != null)
+			list.requestFocusInWindow();
+	}
+
+	private VerticalList getList() {
+		return (VerticalList) SwingUtilities.getAncestorOfClass(VerticalList.class, this);
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.lyl.pkuhole.widgets;
+
+import java.awt.Color;
+import java.awt.Font;
+
+import com.lyl.pkuhole.model.Comment;
+
+/**
+ * 直接绘制的评论单元格，对应CommentCell。
+ */
+public class PaintedCommentCell extends PaintedCell {
+
+	private static final Font BorderTitleFont = new Font(Font.SANS_SERIF, Font.BOLD, 18);
+
+	private Comment comment;
+
+	public PaintedCommentCell() {
+		super(Color.CYAN, BorderTitleFont);
+	}
+
+	/**
+	 * 显示另一条评论
+	 */
+	public void bind(Comment comment) {
+		this.comment = comment;
+		setText(comment.toFormattedString());
+		setTitle("#" + comment.cid);
+	}
+
+	@Override
+	public void onClicked() {
+		/*
+		 * Do comment. Delegated to listener in TopicWindow and do nothing here.
+		 */
+	}
+
+	public Comment getComment() {
+		return comment;
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.lyl.pkuhole.widgets;
+
+import java.awt.Color;
+import java.awt.Font;
+
+import com.lyl.pkuhole.gui.TopicWindow;
+import com.lyl.pkuhole.model.Topic;
+import com.lyl.pkuhole.model.TopicType;
+
+/**
+ * 直接绘制的文字树洞单元格，对应TopicCell。
+ */
+public class PaintedTopicCell extends PaintedCell {
+
+	private static final Font BorderTitleFont = new Font(Font.SANS_SERIF, Font.BOLD, 20);
+
+	private Topic topic;
+
+	private boolean isNewWindowEnabled;
+
+	public PaintedTopicCell(boolean isNewWindowEnabled) {
+		super(Color.ORANGE, BorderTitleFont);
+		this.isNewWindowEnabled = isNewWindowEnabled;
+	}
+
+	/**
+	 * 显示另一条树洞
+	 */
+	public void bind(Topic topic) {
+		this.topic = topic;
+		setFormattedText();
+		setTitle("#" + topic.pid);
+	}
+
+	public void refresh() {
+		setFormattedText();
+	}
+
+	private void setFormattedText() {
+		if (topic.type == TopicType.AUDIO)
+			setText("[这是一条语音树洞，目前暂不支持]\n" + topic.toFormattedString());
+		else
+			setText(topic.toFormattedString());
+	}
+
+	@Override
+	public void onClicked() {
+		if (isNewWindowEnabled) {
+			new TopicWindow(topic).init();
+		} else {
+			/*
+			 * Do comment. Delegated to listener in TopicWindow and do nothing here.
+			 */
+		}
+	}
+
+	public Topic getTopic() {
+		return topic;
+	}
+
+}
@@ -0,0 +1,393 @@
+package com.lyl.pkuhole.widgets;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+import com.lyl.pkuhole.exception.ImageDecodeException;
+import com.lyl.pkuhole.exception.PKUHoleException;
+import com.lyl.pkuhole.image.ImageCache;
+import com.lyl.pkuhole.image.ImageDecoder;
+import com.lyl.pkuhole.image.ImagePyramid;
+import com.lyl.pkuhole.network.IOExecutor;
+
+/**
+ * 分块显示大图的组件。
+ *
+ * The image is never decoded as a whole. It is cut into square tiles, and
+ * only the tiles that intersect the area being painted are decoded, in the
+ * background, with ImageReadParam.setSourceRegion. When zoomed out, tiles are
+ * decoded with source subsampling, so a tile always has about TILE_SIZE pixels
+ * on a side whatever the zoom. Decoded tiles are kept in an LRU bounded by
+ * their memory.
+ *
+ * Tiles at subsampling 2^k are exactly level k of the ImagePyramid, so if the
+ * ImageCache has that level no tile is decoded at all. Tiles not decoded yet
+ * are painted from the nearest coarser level in the cache, if any, and grey
+ * otherwise.
+ *
+ * Tiles are decoded one at a time on a thread of this view, which alone uses
+ * the reader, so slow decodes don't hold up the I/O pool. Pending tiles that
+ * leave the viewport are cancelled before they are decoded.
+ *
+ * Zoom levels are powers of 2. Must be put in a JScrollPane, used on the event
+ * dispatch thread only, and disposed when no longer needed.
+ */
+public class TiledImageView extends JComponent implements Scrollable {
+
+	private static final int TILE_SIZE = 512;
+	private static final long TILE_CACHE_BYTES = 48L * 1024 * 1024;
+	private static final int MIN_ZOOM_LEVEL = -5;
+	private static final int MAX_ZOOM_LEVEL = 3;
+	private static final int UNIT_INCREMENT = 20;
+	private static final Color PLACEHOLDER_COLOR = new Color(0xee, 0xee, 0xee);
+
+	private static final int MAX_PREVIEW_LEVELS = 8;
+	private static final long DECODER_KEEP_ALIVE_SECONDS = 30;
+
+	private final ImageReader reader;
+	private final int imageWidth, imageHeight;
+	private final String path;
+	private final ThreadPoolExecutor decoder;
+
+	// zoom = 2^zoomLevel
+	private int zoomLevel;
+
+	private final LinkedHashMap<Tile, BufferedImage> tiles = new LinkedHashMap<Tile, BufferedImage>(16, 0.75f, true);
+	private long tileBytes;
+	private final Map<Tile, CompletableFuture<BufferedImage>> pending = new HashMap<Tile, CompletableFuture<BufferedImage>>();
+
+	/**
+	 * @param data
+	 *            encoded image; only its header is read here
+	 * @param path
+	 *            path of the image on the server, to use the levels of its
+	 *            ImagePyramid that are cached; null if there is none
+	 * @throws ImageDecodeException
+	 *             the format is unknown or the header is broken
+	 */
+	public TiledImageView(byte[] data, String path) throws ImageDecodeException {
+		this.path = path;
+		try {
+			reader = ImageDecoder.createReader(data);
+			if (reader == null)
+				throw new ImageDecodeException("图片损坏！");
+			imageWidth = reader.getWidth(0);
+			imageHeight = reader.getHeight(0);
+		} catch (IOException | RuntimeException e) {
+			throw new ImageDecodeException("图片损坏！");
+		}
+		decoder = new ThreadPoolExecutor(1, 1, DECODER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new IOExecutor.NamedThreadFactory("pkuhole-tile"));
+		decoder.allowCoreThreadTimeOut(true);
+		setOpaque(true);
+		setBackground(Color.WHITE);
+	}
+
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	public double getZoom() {
+		return Math.pow(2, zoomLevel);
+	}
+
+	public int getZoomLevel() {
+		return zoomLevel;
+	}
+
+	/**
+	 * 缩放
+	 *
+	 * @param level
+	 *            zoom = 2^level, clamped to the supported range
+	 * @param anchor
+	 *            point in this component that should stay under the mouse, or
+	 *            null to keep the centre of the viewport
+	 */
+	public void setZoomLevel(int level, Point anchor) {
+		level = Math.max(MIN_ZOOM_LEVEL, Math.min(MAX_ZOOM_LEVEL, level));
+		if (level == zoomLevel)
+			return;
+		JViewport viewport = getParent() instanceof JViewport ? (JViewport) getParent() : null;
+		Rectangle view = viewport == null ? new Rectangle() : viewport.getViewRect();
+		if (anchor == null)
+			anchor = new Point(view.x + view.width / 2, view.y + view.height / 2);
+		double scale = Math.pow(2, level - zoomLevel);
+		zoomLevel = level;
+		cancelPending();
+		revalidate();
+		if (viewport != null) {
+			// Keep the anchor at the same place in the viewport.
+			Point p = new Point((int) (anchor.x * scale) - (anchor.x - view.x),
+					(int) (anchor.y * scale) - (anchor.y - view.y));
+			viewport.setViewSize(getPreferredSize());
+			Dimension size = getPreferredSize();
+			p.x = Math.max(0, Math.min(p.x, size.width - view.width));
+			p.y = Math.max(0, Math.min(p.y, size.height - view.height));
+			viewport.setViewPosition(p);
+		}
+		repaint();
+	}
+
+	/**
+	 * The largest zoom level at which the image fits in the size, but not above
+	 * 1.
+	 */
+	public int getFitZoomLevel(Dimension size) {
+		int level = 0;
+		while (level > MIN_ZOOM_LEVEL && (imageWidth * Math.pow(2, level) > size.width
+				|| imageHeight * Math.pow(2, level) > size.height))
+			level--;
+		return level;
+	}
+
+	/**
+	 * Drop every tile and release the reader, after the tile being decoded if
+	 * any.
+	 */
+	public void dispose() {
+		cancelPending();
+		tiles.clear();
+		tileBytes = 0;
+		decoder.execute(reader::dispose);
+		decoder.shutdown();
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		double zoom = getZoom();
+		return new Dimension(Math.max(1, (int) Math.ceil(imageWidth * zoom)),
+				Math.max(1, (int) Math.ceil(imageHeight * zoom)));
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(getSize());
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		double zoom = getZoom();
+		int subsampling = subsampling();
+		Dimension size = getPreferredSize();
+		BufferedImage preview = null;
+		if (path != null) {
+			int level = Integer.numberOfTrailingZeros(subsampling);
+			BufferedImage cached = ImagePyramid.getCached(path, level);
+			if (cached != null) {
+				drawScaled(g, cached, size);
+				return;
+			}
+			for (int l = level + 1; preview == null && l <= level + MAX_PREVIEW_LEVELS; l++)
+				preview = ImagePyramid.getCached(path, l);
+			if (preview != null)
+				drawScaled(g, preview, size);
+		}
+		// Size of a tile on screen.
+		double tileSize = TILE_SIZE * subsampling * zoom;
+		int colCount = (int) Math.ceil((double) imageWidth / (TILE_SIZE * subsampling));
+		int rowCount = (int) Math.ceil((double) imageHeight / (TILE_SIZE * subsampling));
+		int firstCol = Math.max(0, (int) (clip.x / tileSize));
+		int lastCol = Math.min(colCount - 1, (int) ((clip.x + clip.width - 1) / tileSize));
+		int firstRow = Math.max(0, (int) (clip.y / tileSize));
+		int lastRow = Math.min(rowCount - 1, (int) ((clip.y + clip.height - 1) / tileSize));
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int col = firstCol; col <= lastCol; col++) {
+				Tile tile = new Tile(subsampling, col, row);
+				Rectangle source = tile.source();
+				int x = (int) Math.floor(source.x * zoom), y = (int) Math.floor(source.y * zoom);
+				int w = (int) Math.ceil((source.x + source.width) * zoom) - x;
+				int h = (int) Math.ceil((source.y + source.height) * zoom) - y;
+				BufferedImage image = tiles.get(tile);
+				if (image != null) {
+					g.drawImage(image, x, y, w, h, null);
+				} else {
+					if (preview == null) {
+						g.setColor(PLACEHOLDER_COLOR);
+						g.fillRect(x, y, w, h);
+					}
+					request(tile);
+				}
+			}
+		}
+		cancelHidden(getVisibleRect(), subsampling, tileSize);
+	}
+
+	private void drawScaled(Graphics g, BufferedImage image, Dimension size) {
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.drawImage(image, 0, 0, size.width, size.height, null);
+		g2.dispose();
+	}
+
+	/**
+	 * Tiles are decoded with the largest subsampling that doesn't lose detail at
+	 * the current zoom.
+	 */
+	private int subsampling() {
+		return zoomLevel >= 0 ? 1 : 1 << -zoomLevel;
+	}
+
+	private void request(Tile tile) {
+		if (pending.containsKey(tile) || decoder.isShutdown())
+			return;
+		CompletableFuture<BufferedImage> future = IOExecutor.submit(() -> decode(tile), decoder);
+		pending.put(tile, future);
+		future.whenComplete((image, e) -> SwingUtilities.invokeLater(() -> {
+			if (pending.get(tile) != future)
+				return;
+			pending.remove(tile);
+			if (image == null)
+				return;
+			put(tile, image);
+			repaint();
+		}));
+	}
+
+	/**
+	 * Runs on the decoder thread.
+	 */
+	private BufferedImage decode(Tile tile) throws PKUHoleException {
+		if (Thread.currentThread().isInterrupted())
+			throw new PKUHoleException(IOExecutor.CANCELLED_MESSAGE);
+		try {
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceRegion(tile.source());
+			if (tile.subsampling > 1)
+				param.setSourceSubsampling(tile.subsampling, tile.subsampling, 0, 0);
+			return reader.read(0, param);
+		} catch (IOException | RuntimeException e) {
+			throw new ImageDecodeException("图片损坏！");
+		}
+	}
+
+	private void put(Tile tile, BufferedImage image) {
+		BufferedImage old = tiles.put(tile, image);
+		if (old != null)
+			tileBytes -= ImageCache.sizeOf(old);
+		tileBytes += ImageCache.sizeOf(image);
+		for (Iterator<BufferedImage> it = tiles.values().iterator(); tileBytes > TILE_CACHE_BYTES
+				&& tiles.size() > 1 && it.hasNext();) {
+			tileBytes -= ImageCache.sizeOf(it.next());
+			it.remove();
+		}
+	}
+
+	/**
+	 * Cancel the pending tiles that no longer intersect the visible area.
+	 *
+	 * @param tileSize
+	 *            size of a tile on screen
+	 */
+	private void cancelHidden(Rectangle visible, int subsampling, double tileSize) {
+		for (Iterator<Map.Entry<Tile, CompletableFuture<BufferedImage>>> it = pending.entrySet().iterator(); it
+				.hasNext();) {
+			Map.Entry<Tile, CompletableFuture<BufferedImage>> entry = it.next();
+			Tile tile = entry.getKey();
+			if (tile.subsampling == subsampling && visible.intersects(tile.col * tileSize, tile.row * tileSize,
+					tileSize, tileSize))
+				continue;
+			entry.getValue().cancel(true);
+			it.remove();
+		}
+	}
+
+	private void cancelPending() {
+		for (CompletableFuture<BufferedImage> future : pending.values())
+			future.cancel(true);
+		pending.clear();
+	}
+
+	/**
+	 * A tile of the image decoded with the subsampling. Column and row count in
+	 * tiles of TILE_SIZE * subsampling source pixels.
+	 */
+	private class Tile {
+
+		final int subsampling, col, row;
+
+		Tile(int subsampling, int col, int row) {
+			this.subsampling = subsampling;
+			this.col = col;
+			this.row = row;
+		}
+
+		Rectangle source() {
+			int size = TILE_SIZE * subsampling;
+			int x = col * size, y = row * size;
+			return new Rectangle(x, y, Math.min(size, imageWidth - x), Math.min(size, imageHeight - y));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Tile))
+				return false;
+			Tile t = (Tile) o;
+			return subsampling == t.subsampling && col == t.col && row == t.row;
+		}
+
+		@Override
+		public int hashCode() {
+			return (subsampling * 31 + col) * 31 + row;
+		}
+
+	}
+
+	/**
+	 * --- The Scrollable Implementation ---
+	 */
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return getPreferredSize();
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return UNIT_INCREMENT;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return false;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return false;
+	}
+
+}
@@ -4,14 +4,13 @@ import java.awt.Color;
 import java.awt.Font;
 
 import javax.swing.BorderFactory;
-import javax.swing.JTextArea;
 import javax.swing.border.TitledBorder;
 
 import com.lyl.pkuhole.gui.TopicWindow;
 import com.lyl.pkuhole.model.Topic;
 import com.lyl.pkuhole.model.TopicType;
 
-public class TopicCell extends JTextArea implements VerticalList.ListItemListener {
+public class TopicCell extends WrappedTextArea implements VerticalList.ListItemListener {
 
 	private static final Font BorderTitleFont = new Font(Font.SANS_SERIF, Font.BOLD, 20);
 
@@ -24,30 +23,40 @@ public class TopicCell extends JTextArea implements VerticalList.ListItemListene
 	private boolean isNewWindowEnabled;
 
 	public TopicCell(Topic topic, boolean isNewWindowEnabled) {
-		this.topic = topic;
+		this(isNewWindowEnabled);
+		bind(topic);
+	}
+
+	/**
+	 * An empty cell, to be bound to a topic later.
+	 */
+	public TopicCell(boolean isNewWindowEnabled) {
 		this.isNewWindowEnabled = isNewWindowEnabled;
 		init();
 	}
 
 	private void init() {
-		setEditable(false);
-		setLineWrap(true);
-
-		setFormattedText();
-
 		border = BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.ORANGE, 5), null,
 				TitledBorder.LEFT, TitledBorder.TOP, BorderTitleFont);
-		border.setTitle("#" + topic.pid);
 		setBorder(border);
 	}
 
+	/**
+	 * 显示另一条树洞
+	 */
+	public void bind(Topic topic) {
+		this.topic = topic;
+		setFormattedText();
+		border.setTitle("#" + topic.pid);
+	}
+
 	public void refresh() {
 		setFormattedText();
 	}
 
 	private void setFormattedText() {
 		if (topic.type == TopicType.AUDIO)
-			setText("[һĿǰݲ֧]\n" + topic.toFormattedString());
+			setText("[这是一条语音树洞，目前暂不支持]\n" + topic.toFormattedString());
 		else
 			setText(topic.toFormattedString());
 	}
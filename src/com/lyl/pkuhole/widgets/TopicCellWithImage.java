@@ -6,20 +6,23 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
-import javax.swing.JTextArea;
 import javax.swing.border.TitledBorder;
 
 import com.lyl.pkuhole.gui.ImageWindow;
 import com.lyl.pkuhole.gui.TopicWindow;
+import com.lyl.pkuhole.image.ImageLoader;
 import com.lyl.pkuhole.model.Topic;
 
-public class TopicCellWithImage extends JPanel implements VerticalList.ListItemListener, Observer {
+public class TopicCellWithImage extends JPanel
+		implements VerticalList.ListItemListener, VerticalList.VisibilityListener, Observer {
 
 	private static final Font BorderTitleFont = new Font(Font.SANS_SERIF, Font.BOLD, 20);
 
@@ -27,23 +30,30 @@ public class TopicCellWithImage extends JPanel implements VerticalList.ListItemL
 
 	private TitledBorder border;
 
-	private JTextArea text;
+	private WrappedTextArea text;
 	private JLabel image;
 
 	private Topic topic;
+	// Image request of this cell while it is near the viewport and the image isn't loaded.
+	private CompletableFuture<BufferedImage> imageRequest;
 
 	private boolean isNewWindowEnabled;
 
 	public TopicCellWithImage(Topic topic, boolean isNewWindowEnabled) {
-		this.topic = topic;
+		this(isNewWindowEnabled);
+		bind(topic);
+	}
+
+	/**
+	 * An empty cell, to be bound to a topic later.
+	 */
+	public TopicCellWithImage(boolean isNewWindowEnabled) {
 		this.isNewWindowEnabled = isNewWindowEnabled;
 		init();
 	}
 
 	private void init() {
-		text = new JTextArea();
-		text.setEditable(false);
-		text.setLineWrap(true);
+		text = new WrappedTextArea();
 		text.setFocusable(false);
 		text.addMouseListener(new MouseAdapter() {
 			@Override
@@ -52,23 +62,15 @@ public class TopicCellWithImage extends JPanel implements VerticalList.ListItemL
 			}
 		});
 		text.setOpaque(false);
-		text.setText(topic.toFormattedString());
 
 		image = new JLabel();
-		if (!topic.isLoaded()) {
-			image.setText("ͼƬ...");
-			topic.addObserver(this);
-			topic.loadImage();
-		} else {
-			setImage();
-		}
 		image.setBorder(BorderFactory.createLineBorder(Color.BLACK));
 		image.addMouseListener(new MouseAdapter() {
 			@Override
 			public void mouseClicked(MouseEvent e) {
 				if (e.getClickCount() == 2) {
-					if (topic.imageIcon != null)
-						new ImageWindow(topic.imageIcon).init();
+					if (topic.scaledImageIcon != null)
+						new ImageWindow(topic.getImagePath()).init();
 				}
 			}
 		});
@@ -88,12 +90,69 @@ public class TopicCellWithImage extends JPanel implements VerticalList.ListItemL
 
 		border = BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.ORANGE, 5), null,
 				TitledBorder.LEFT, TitledBorder.TOP, BorderTitleFont);
-		border.setTitle("#" + topic.pid);
 		setBorder(border);
 
 		setBackground(Color.WHITE);
 	}
 
+	/**
+	 * 显示另一条树洞。The image of the previous topic stops loading.
+	 */
+	public void bind(Topic topic) {
+		if (topic == this.topic) {
+			refresh();
+			return;
+		}
+		cancelImage();
+		// The same topic refreshed keeps the picture it shows.
+		if (this.topic != null && this.topic.pid == topic.pid)
+			topic.adoptImage(this.topic);
+		this.topic = topic;
+		text.setText(topic.toFormattedString());
+		image.setIcon(null);
+		image.setToolTipText(null);
+		if (!topic.isLoaded()) {
+			image.setText("图片加载中...");
+		} else {
+			setImage();
+		}
+		border.setTitle("#" + topic.pid);
+	}
+
+	/**
+	 * Images are only loaded while the cell is in or near the viewport, so cells
+	 * far below, or removed from their list, cost nothing.
+	 */
+	@Override
+	public void onVisibilityChanged(VerticalList.Visibility visibility) {
+		if (visibility == VerticalList.Visibility.HIDDEN) {
+			cancelImage();
+			return;
+		}
+		ImageLoader.Priority priority = visibility == VerticalList.Visibility.VISIBLE ? ImageLoader.Priority.VISIBLE
+				: ImageLoader.Priority.PAGE;
+		if (imageRequest != null) {
+			ImageLoader.setPriority(imageRequest, priority);
+		} else if (!topic.isLoaded()) {
+			topic.addObserver(this);
+			imageRequest = topic.loadImage(priority);
+		}
+	}
+
+	@Override
+	public void removeNotify() {
+		super.removeNotify();
+		cancelImage();
+	}
+
+	private void cancelImage() {
+		if (imageRequest != null) {
+			imageRequest.cancel(true);
+			imageRequest = null;
+			topic.deleteObserver(this);
+		}
+	}
+
 	public void refresh() {
 		text.setText(topic.toFormattedString());
 	}
@@ -117,22 +176,23 @@ public class TopicCellWithImage extends JPanel implements VerticalList.ListItemL
 	private void setImage() {
 		if (topic.scaledImageIcon == null) {
 			if (topic.isLoaded())
-				image.setText("ͼƬʧܣԭͼƬ𻵻ѱɾ");
+				image.setText("图片加载失败！原因：图片损坏或已被删除。");
 			else
-				image.setText("ͼƬʧܣԭ粻Ӻˢԡ");
+				image.setText("图片加载失败！原因：网络不畅。建议检查网络连接后刷新重试。");
 		} else {
 			image.setText(null);
 			int width = topic.scaledImageIcon.getIconWidth();
 			int height = topic.scaledImageIcon.getIconHeight();
 			image.setIcon(topic.scaledImageIcon);
 			image.setSize(width, height);
-			image.setToolTipText("˫鿴ͼ");
+			image.setToolTipText("双击查看大图");
 		}
 	}
 
 	@Override
 	public void update(Observable o, Object arg) {
 		setImage();
+		imageRequest = null;
 		o.deleteObserver(this);
 	}
 
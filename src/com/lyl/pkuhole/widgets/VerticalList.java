@@ -3,8 +3,6 @@ package com.lyl.pkuhole.widgets;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
-import java.awt.GridBagConstraints;
-import java.awt.GridBagLayout;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.ActionListener;
@@ -13,76 +11,136 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
+import javax.swing.JViewport;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeListener;
 
 /**
- * ԼʵֵĴֱбVerticalList
+ * 自己实现的垂直列表组件VerticalList。
  * 
- * SwingJListһЩbug
- * 1.ͨrendererÿɣ˵ıʱѶģͽ֪ͨͼƬصȣ
- * 2.ͬʱJListJScrollPaneʱˮƽݻ֮󣬵ˮƽСʱݽԭĴС
+ * Swing库的JList有一些bug：
+ * 1.它通过renderer绘制组件，而不是真正由每个组件构成，因此当组件发生改变时很难对模型进行通知（如图片框加载等）；
+ * 2.同时，当JList被置于JScrollPane中时，水平将组件增大，其内容会随之增大，但再水平缩小时，内容将保持原来的大小。
  * 
- * VerticaListÿãʵӵбУ1
- * ScrollableʵgetScrollableTracksViewportWidthtrue2
+ * VerticaList保持其中每个组件的引用，将组件实际添加到列表中，解决了问题1；
+ * Scrollable实现中让getScrollableTracksViewportWidth返回true，解决了问题2。
+ * 
+ * 列表有两种用法：
+ * 1.addItem添加组件后commit，每个组件一直存在；
+ * 2.setItems设置数据和CellFactory（虚拟化模式），只为可视区域附近的数据创建组件。
+ * 两种模式都可以增量添加：再次addItem后commit，或appendItems/prependItems，只布局新的数据。
+ * 
+ * In virtualized mode, only items within one viewport height of the viewport
+ * have a cell. Cells that scroll further away are taken out and kept by type,
+ * to be bound to the next item of the same type that scrolls in. Heights of
+ * items that have never had a cell are estimated from the average of those
+ * measured so far; once measured, a height is kept until the width changes or
+ * the cell is invalidated (e.g. its image has loaded). When measuring changes
+ * the height of items above the viewport, the list scrolls by as much, so the
+ * content on screen stays still.
  */
 public class VerticalList extends JPanel implements Scrollable {
 
 	private static final int PREFERRED_HEIGHT = 800;
+	private static final int DEFAULT_ESTIMATED_HEIGHT = 150;
+	private static final int STALE = -1;
+	private static final String INDEX_KEY = "VerticalList.index";
+	private static final String TYPE_KEY = "VerticalList.type";
 
 	private List<JComponent> components;
-	private List<MouseAdapter> listeners;
+	// Last visibility told to each component that is a VisibilityListener.
+	private List<Visibility> visibilities;
+	private boolean visibilityUpdatePending;
+	private ChangeListener viewportListener;
 
 	private int itemCount;
 	private int selectedId;
 
 	private ActionListener actionListener;
 
-	private GridBagLayout gb;
-	private GridBagConstraints gbc;
+	// Virtualized mode
+	private boolean virtual;
+	private List<Object> items;
+	private CellFactory<Object> factory;
+	// Height of each item, and the width it was measured at (0 if estimated,
+	// STALE if measured but to be measured again).
+	private int[] heights;
+	private int[] measuredWidths;
+	// offsets[i] is the y of item i; offsets[itemCount] the height of the list.
+	private int[] offsets;
+	// Sum and number of the measured heights, one per item measured.
+	private long measuredTotal;
+	private int measuredCount;
+	// Cells of the items near the viewport, by index.
+	private final Map<Integer, JComponent> realized = new HashMap<Integer, JComponent>();
+	// Cells out of use, by type.
+	private final Map<Object, List<JComponent>> recycled = new HashMap<Object, List<JComponent>>();
+	// Last visibility told to each cell.
+	private final Map<JComponent, Visibility> cellVisibilities = new HashMap<JComponent, Visibility>();
+	private boolean updatingCells;
 
 	public VerticalList() {
 		itemCount = 0;
 		selectedId = -1;
 		components = new ArrayList<JComponent>();
-		listeners = new ArrayList<MouseAdapter>();
+		visibilities = new ArrayList<Visibility>();
+		viewportListener = e -> {
+			updateCells();
+			scheduleVisibilityUpdate();
+		};
 
-		gb = new GridBagLayout();
-		gbc = new GridBagConstraints();
-
-		setLayout(gb);
+		// Items are laid out by doLayout.
+		setLayout(null);
 
 		setFocusable(true);
 		addKeyListener(new KeyAdapter() {
 			@Override
 			public void keyPressed(KeyEvent e) {
-				switch (e.getKeyCode()) {
-				case KeyEvent.VK_UP:
-					if (selectedId > 0)
-						onItemSelected(selectedId - 1);
-					break;
-				case KeyEvent.VK_DOWN:
-					if (selectedId != -1 && selectedId < itemCount - 1)
-						onItemSelected(selectedId + 1);
-					break;
-				case KeyEvent.VK_ENTER:
-					if (selectedId != -1)
-						onItemClicked(selectedId);
-					break;
-				}
+				handleKey(e);
 			}
 		});
 
 	}
 
 	/**
-	 * 
+	 * Move the selection with the arrow keys and open the selected item with
+	 * Enter. Cells that take the focus pass their key presses here.
+	 * 
+	 * @return whether the key is one of those
+	 */
+	boolean handleKey(KeyEvent e) {
+		switch (e.getKeyCode()) {
+		case KeyEvent.VK_UP:
+			if (selectedId > 0)
+				onItemSelected(selectedId - 1);
+			return true;
+		case KeyEvent.VK_DOWN:
+			if (selectedId != -1 && selectedId < itemCount - 1)
+				onItemSelected(selectedId + 1);
+			return true;
+		case KeyEvent.VK_ENTER:
+			if (selectedId != -1)
+				onItemClicked(selectedId);
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * 添加组件
 	 * 
 	 * @param component
 	 *            Item to be added. Must be an instance of ListItemListener.
@@ -91,48 +149,37 @@ public class VerticalList extends JPanel implements Scrollable {
 	 */
 	public boolean addItem(JComponent component) {
 		if (component instanceof ListItemListener) {
+			component.putClientProperty(INDEX_KEY, components.size());
 			components.add(component);
-			MouseAdapter listener = new MouseAdapter() {
-				@Override
-				public void mouseClicked(MouseEvent e) {
-					switch (e.getClickCount()) {
-					case 1:
-						onItemSelected(listeners.indexOf(this));
-						break;
-					case 2:
-						onItemSelected(listeners.indexOf(this));
-						onItemClicked(listeners.indexOf(this));
-						break;
-					}
-				}
-			};
-			listeners.add(listener);
-			component.addMouseListener(listener);
+			visibilities.add(Visibility.HIDDEN);
+			addClickListener(component);
 			component.setFocusable(false);
-			itemCount++;
 			return true;
 		} else
 			return false;
 	}
 
 	/**
-	 * Ĳ֡ȫá
+	 * 进行真正的布局。必须在组件添加完全后调用。
+	 * 
+	 * Only the items added since the last commit are laid out; they go below
+	 * those already on display, which stay where they are. The first commit
+	 * after removeAll scrolls back to the top.
 	 */
 	public void commit() {
-		if (components.isEmpty())
+		int from = itemCount;
+		if (components.size() == from)
 			return;
-		gbc.fill = GridBagConstraints.HORIZONTAL;
-		gbc.anchor = GridBagConstraints.NORTH;
-		gbc.weightx = 1;
-		gbc.weighty = 0;
-		gbc.gridx = 0;
-		for (int i = 0; i < itemCount - 1; i++) {
-			gb.setConstraints(components.get(i), gbc);
+		for (int i = from; i < components.size(); i++)
 			add(components.get(i));
+		itemCount = components.size();
+		growHeights(from);
+		revalidate();
+		if (from > 0) {
+			repaint();
+			scheduleVisibilityUpdate();
+			return;
 		}
-		gbc.weighty = 1;
-		gb.setConstraints(components.get(itemCount - 1), gbc);
-		add(components.get(itemCount - 1));
 		validate();
 		Container c = getParent();
 		if (c != null && c instanceof JScrollPane) {
@@ -140,70 +187,712 @@ public class VerticalList extends JPanel implements Scrollable {
 			JScrollBar bar = scrollPane.getVerticalScrollBar();
 			bar.setValue(bar.getMinimum());
 		}
+		scheduleVisibilityUpdate();
 	}
 
 	/**
-	 * Ƴ
+	 * 移除所有组件
 	 */
 	@Override
 	public void removeAll() {
+		// Removed items are hidden for good; this cancels whatever they are loading.
+		if (virtual) {
+			for (Iterator<Map.Entry<Integer, JComponent>> it = realized.entrySet().iterator(); it.hasNext();) {
+				recycle(it.next().getValue());
+				it.remove();
+			}
+		} else {
+			for (int i = 0; i < itemCount; i++)
+				setVisibility(i, Visibility.HIDDEN);
+		}
 		super.removeAll();
 		components.clear();
-		listeners.clear();
+		visibilities.clear();
 		itemCount = 0;
 		selectedId = -1;
+		virtual = false;
+		items = null;
+		heights = measuredWidths = offsets = null;
+	}
+
+	/**
+	 * 设置数据，进入虚拟化模式。Replaces whatever the list showed, and scrolls
+	 * back to the top.
+	 * 
+	 * @param cellFactory
+	 *            makes and binds the cells; cells made by the same factory for
+	 *            earlier items are reused
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> void setItems(List<? extends T> newItems, CellFactory<T> cellFactory) {
+		removeAll();
+		if (factory != cellFactory) {
+			recycled.clear();
+			measuredTotal = 0;
+			measuredCount = 0;
+		}
+		virtual = true;
+		factory = (CellFactory<Object>) cellFactory;
+		items = new ArrayList<Object>(newItems);
+		itemCount = items.size();
+		growHeights(0);
+		revalidate();
+		repaint();
+		Container c = getParent();
+		if (c instanceof JViewport)
+			((JViewport) c).setViewPosition(new Point(0, 0));
+		scheduleVisibilityUpdate();
+	}
+
+	/**
+	 * 在末尾追加数据。Virtualized mode only; the items already in the list keep
+	 * their cells, heights and positions, and only the new ones are laid out as
+	 * they scroll into view.
+	 */
+	public void appendItems(List<?> newItems) {
+		if (!virtual || newItems.isEmpty())
+			return;
+		int from = itemCount;
+		items.addAll(newItems);
+		itemCount = items.size();
+		growHeights(from);
+		revalidate();
+		repaint();
+		scheduleVisibilityUpdate();
+	}
+
+	/**
+	 * 在开头插入数据。Virtualized mode only; the list scrolls down by the height of
+	 * the new items, so what was on display stays still.
+	 */
+	public void prependItems(List<?> newItems) {
+		int count = newItems.size();
+		if (!virtual || count == 0)
+			return;
+		items.addAll(0, newItems);
+		int[] oldHeights = heights, oldWidths = measuredWidths;
+		itemCount = items.size();
+		heights = new int[itemCount];
+		measuredWidths = new int[itemCount];
+		offsets = new int[itemCount + 1];
+		Arrays.fill(heights, 0, count, estimatedHeight());
+		System.arraycopy(oldHeights, 0, heights, count, oldHeights.length);
+		System.arraycopy(oldWidths, 0, measuredWidths, count, oldWidths.length);
+		updateOffsets(0);
+		shiftIndices(0, count);
+		revalidate();
+		repaint();
+		scrollBy(offsets[count]);
+		scheduleVisibilityUpdate();
+	}
+
+	/**
+	 * 移除一段数据。Virtualized mode only. If the items are above the viewport,
+	 * the list scrolls up by their height, so what is on display stays still.
+	 * 
+	 * @param from
+	 *            index of the first item removed
+	 * @param count
+	 *            number of items removed
+	 */
+	public void removeItems(int from, int count) {
+		if (!virtual || count <= 0)
+			return;
+		int to = from + count;
+		int removedHeight = offsets[to] - offsets[from];
+		boolean above = offsets[to] <= getViewRect().y;
+		for (Iterator<Map.Entry<Integer, JComponent>> it = realized.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Integer, JComponent> entry = it.next();
+			if (entry.getKey() >= from && entry.getKey() < to) {
+				recycle(entry.getValue());
+				it.remove();
+			}
+		}
+		if (selectedId >= from && selectedId < to)
+			selectedId = -1;
+		items.subList(from, to).clear();
+		itemCount = items.size();
+		System.arraycopy(heights, to, heights, from, heights.length - to);
+		System.arraycopy(measuredWidths, to, measuredWidths, from, measuredWidths.length - to);
+		heights = Arrays.copyOf(heights, itemCount);
+		measuredWidths = Arrays.copyOf(measuredWidths, itemCount);
+		offsets = Arrays.copyOf(offsets, itemCount + 1);
+		updateOffsets(from);
+		shiftIndices(to, -count);
+		if (above)
+			scrollBy(-removedHeight);
+		revalidate();
+		repaint();
+		scheduleVisibilityUpdate();
+	}
+
+	/**
+	 * 按键值更新数据，例如刷新后。
+	 * 
+	 * Items are matched with those on display by CellFactory.getKey. The
+	 * longest run of matched items still in their old order stays: where their
+	 * content is the same, the old item is kept with its cell and height;
+	 * otherwise the new item is bound to the cell and measured again. The
+	 * other items are removed and inserted. Selection and the scroll position
+	 * follow the items they were on. Outside of virtualized mode, or with
+	 * another factory, this is setItems.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> void updateItems(List<? extends T> newItems, CellFactory<T> cellFactory) {
+		if (!virtual || factory != cellFactory) {
+			setItems(newItems, cellFactory);
+			return;
+		}
+		int newCount = newItems.size();
+		Map<Object, Integer> oldIndices = new HashMap<Object, Integer>();
+		for (int i = 0; i < itemCount; i++)
+			oldIndices.put(factory.getKey(items.get(i)), i);
+		int[] matches = new int[newCount];
+		for (int j = 0; j < newCount; j++) {
+			Integer i = oldIndices.remove(factory.getKey(newItems.get(j)));
+			matches[j] = i == null ? -1 : i;
+		}
+		// Old index -> new index of the items that stay; -1 for the others.
+		int[] moves = keptItems(matches);
+
+		Rectangle view = getViewRect();
+		int anchor = itemCount == 0 ? -1 : rowAt(view.y);
+		int anchorDelta = anchor == -1 ? 0 : view.y - offsets[anchor];
+		while (anchor != -1 && anchor < itemCount && moves[anchor] == -1)
+			anchor++;
+
+		List<Object> oldItems = items;
+		int[] oldHeights = heights, oldWidths = measuredWidths;
+		int estimate = estimatedHeight();
+		items = new ArrayList<Object>(newItems);
+		heights = new int[newCount];
+		measuredWidths = new int[newCount];
+		offsets = new int[newCount + 1];
+		Arrays.fill(heights, estimate);
+		List<Integer> rebound = new ArrayList<Integer>();
+		for (int i = 0; i < itemCount; i++) {
+			int j = moves[i];
+			if (j == -1)
+				continue;
+			heights[j] = oldHeights[i];
+			if (factory.isSameContent(oldItems.get(i), items.get(j))) {
+				items.set(j, oldItems.get(i));
+				measuredWidths[j] = oldWidths[i];
+			} else {
+				measuredWidths[j] = oldWidths[i] == 0 ? 0 : STALE;
+				rebound.add(j);
+			}
+		}
+		Map<Integer, JComponent> moved = new HashMap<Integer, JComponent>();
+		for (Map.Entry<Integer, JComponent> entry : realized.entrySet()) {
+			int j = moves[entry.getKey()];
+			if (j == -1) {
+				recycle(entry.getValue());
+				continue;
+			}
+			entry.getValue().putClientProperty(INDEX_KEY, j);
+			moved.put(j, entry.getValue());
+		}
+		realized.clear();
+		realized.putAll(moved);
+		for (int j : rebound) {
+			JComponent cell = realized.get(j);
+			if (cell != null)
+				factory.bindCell(cell, items.get(j));
+		}
+		selectedId = selectedId == -1 ? -1 : moves[selectedId];
+		int oldCount = itemCount;
+		itemCount = newCount;
+		updateOffsets(0);
+		revalidate();
+		repaint();
+		if (anchor != -1 && anchor < oldCount)
+			scrollBy(offsets[moves[anchor]] + anchorDelta - view.y);
+		scheduleVisibilityUpdate();
+	}
+
+	/**
+	 * The longest increasing run of old indices in matches, by patience
+	 * sorting.
+	 * 
+	 * @param matches
+	 *            old index of each new item, -1 for new ones
+	 * @return new index of each old item in the run, -1 for the others
+	 */
+	private int[] keptItems(int[] matches) {
+		int n = matches.length;
+		// tails[k]: new index ending the best run of length k + 1 found so far.
+		int[] tails = new int[n], previous = new int[n];
+		int length = 0;
+		for (int j = 0; j < n; j++) {
+			if (matches[j] == -1)
+				continue;
+			int lo = 0, hi = length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (matches[tails[mid]] < matches[j])
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			previous[j] = lo == 0 ? -1 : tails[lo - 1];
+			tails[lo] = j;
+			if (lo == length)
+				length++;
+		}
+		int[] moves = new int[itemCount];
+		Arrays.fill(moves, -1);
+		for (int j = length == 0 ? -1 : tails[length - 1]; j != -1; j = previous[j])
+			moves[matches[j]] = j;
+		return moves;
+	}
+
+	/**
+	 * 数据内容改变后更新其组件。Virtualized mode only; the item is bound again
+	 * and measured again.
+	 */
+	public void updateItem(int index) {
+		if (!virtual || index < 0 || index >= itemCount)
+			return;
+		if (measuredWidths[index] != 0)
+			measuredWidths[index] = STALE;
+		JComponent cell = realized.get(index);
+		if (cell != null)
+			factory.bindCell(cell, items.get(index));
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * 数据，虚拟化模式下有效
+	 */
+	public Object getItem(int index) {
+		return virtual ? items.get(index) : components.get(index);
 	}
 
 	public int getItemCount() {
 		return itemCount;
 	}
 
+	@Override
+	public void doLayout() {
+		if (virtual)
+			updateCells();
+		else
+			layoutComponents();
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet())
+			return super.getPreferredSize();
+		return new Dimension(getWidth(), offsets == null ? 0 : offsets[itemCount]);
+	}
+
+	/**
+	 * Make room for the items from the index on, which start at the estimated
+	 * height; those above keep theirs.
+	 */
+	private void growHeights(int from) {
+		if (from == 0) {
+			heights = new int[itemCount];
+			measuredWidths = new int[itemCount];
+			offsets = new int[itemCount + 1];
+		} else {
+			heights = Arrays.copyOf(heights, itemCount);
+			measuredWidths = Arrays.copyOf(measuredWidths, itemCount);
+			offsets = Arrays.copyOf(offsets, itemCount + 1);
+		}
+		Arrays.fill(heights, from, itemCount, estimatedHeight());
+		updateOffsets(from);
+	}
+
+	/**
+	 * Move the realized cells and the selection of the items from the index on
+	 * by delta places.
+	 */
+	private void shiftIndices(int from, int delta) {
+		Map<Integer, JComponent> moved = new HashMap<Integer, JComponent>();
+		for (Iterator<Map.Entry<Integer, JComponent>> it = realized.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Integer, JComponent> entry = it.next();
+			if (entry.getKey() >= from) {
+				moved.put(entry.getKey() + delta, entry.getValue());
+				entry.getValue().putClientProperty(INDEX_KEY, entry.getKey() + delta);
+				it.remove();
+			}
+		}
+		realized.putAll(moved);
+		if (selectedId >= from)
+			selectedId += delta;
+	}
+
+	/**
+	 * Scroll the viewport by dy, e.g. to keep the content still when items are
+	 * inserted or removed above it.
+	 */
+	private void scrollBy(int dy) {
+		if (dy == 0 || !(getParent() instanceof JViewport))
+			return;
+		JViewport viewport = (JViewport) getParent();
+		// The viewport doesn't scroll past the end of the view; size it first.
+		setSize(getWidth(), offsets[itemCount]);
+		Point p = viewport.getViewPosition();
+		viewport.setViewPosition(new Point(p.x, Math.max(0, p.y + dy)));
+	}
+
+	/**
+	 * Put the items one below the other, measuring those not measured at the
+	 * current width.
+	 */
+	private void layoutComponents() {
+		int width = getWidth();
+		if (width <= 0 || offsets == null)
+			return;
+		int changed = -1;
+		for (int i = 0; i < itemCount; i++) {
+			JComponent c = components.get(i);
+			if ((measuredWidths[i] != width || !c.isValid()) && measure(i, c, width) && changed == -1)
+				changed = i;
+		}
+		if (changed != -1)
+			updateOffsets(changed);
+		for (int i = 0; i < itemCount; i++) {
+			JComponent c = components.get(i);
+			c.setBounds(0, offsets[i], width, heights[i]);
+			if (!c.isValid())
+				c.validate();
+		}
+		if (changed != -1) {
+			revalidate();
+			repaint();
+		}
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		if (getParent() instanceof JViewport)
+			((JViewport) getParent()).addChangeListener(viewportListener);
+		scheduleVisibilityUpdate();
+	}
+
+	@Override
+	public void removeNotify() {
+		if (getParent() instanceof JViewport)
+			((JViewport) getParent()).removeChangeListener(viewportListener);
+		super.removeNotify();
+	}
+
 	/**
-	 * ѡʱ¼ݸ
+	 * Update visibilities once the current events (scrolling, layout) are over.
+	 */
+	private void scheduleVisibilityUpdate() {
+		if (visibilityUpdatePending)
+			return;
+		visibilityUpdatePending = true;
+		SwingUtilities.invokeLater(() -> {
+			visibilityUpdatePending = false;
+			updateVisibility();
+		});
+	}
+
+	/**
+	 * 计算每个组件是否在可视区域内，并通知实现了VisibilityListener的组件。
+	 * 
+	 * Items within one viewport height above or below the viewport are NEAR.
+	 * Outside of a viewport every item is VISIBLE.
+	 */
+	private void updateVisibility() {
+		Rectangle view;
+		if (getParent() instanceof JViewport)
+			view = ((JViewport) getParent()).getViewRect();
+		else
+			view = new Rectangle(0, 0, getWidth(), getHeight());
+		Rectangle near = new Rectangle(view.x, view.y - view.height, view.width, view.height * 3);
+		if (virtual) {
+			for (Map.Entry<Integer, JComponent> entry : realized.entrySet()) {
+				Rectangle r = getRowBounds(entry.getKey());
+				if (r.intersects(view))
+					setCellVisibility(entry.getValue(), Visibility.VISIBLE);
+				else if (r.intersects(near))
+					setCellVisibility(entry.getValue(), Visibility.NEAR);
+				else
+					setCellVisibility(entry.getValue(), Visibility.HIDDEN);
+			}
+			return;
+		}
+		if (offsets == null || getWidth() <= 0)
+			return;
+		for (int i = 0; i < itemCount; i++) {
+			Rectangle r = getRowBounds(i);
+			if (r.intersects(view))
+				setVisibility(i, Visibility.VISIBLE);
+			else if (r.intersects(near))
+				setVisibility(i, Visibility.NEAR);
+			else
+				setVisibility(i, Visibility.HIDDEN);
+		}
+	}
+
+	private Rectangle getViewRect() {
+		if (getParent() instanceof JViewport)
+			return ((JViewport) getParent()).getViewRect();
+		return new Rectangle(0, 0, getWidth(), getHeight());
+	}
+
+	/**
+	 * Give a cell to every item within one viewport height of the viewport,
+	 * measure those not measured at the current width, and take the cells of
+	 * the other items out.
+	 */
+	private void updateCells() {
+		if (!virtual || updatingCells)
+			return;
+		int width = getWidth();
+		if (width <= 0)
+			return;
+		updatingCells = true;
+		boolean scrolled = false;
+		try {
+			Rectangle view = getViewRect();
+			int anchor = itemCount == 0 ? -1 : rowAt(view.y);
+			int anchorY = anchor == -1 ? 0 : offsets[anchor];
+			int top = view.y - view.height, bottom = view.y + view.height * 2;
+			int first = itemCount == 0 ? 0 : rowAt(Math.max(0, top)), last = first - 1;
+			boolean changed = false;
+			// Offsets below a measured item change, so keep them up to date as we go.
+			for (int i = first; i < itemCount && offsets[i] < bottom; i++) {
+				JComponent cell = realize(i);
+				if (measuredWidths[i] != width || !cell.isValid())
+					changed |= measure(i, cell, width);
+				offsets[i + 1] = offsets[i] + heights[i];
+				last = i;
+			}
+			if (changed)
+				updateOffsets(last + 1);
+			for (Iterator<Map.Entry<Integer, JComponent>> it = realized.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<Integer, JComponent> entry = it.next();
+				if (entry.getKey() < first || entry.getKey() > last) {
+					recycle(entry.getValue());
+					it.remove();
+				}
+			}
+			for (Map.Entry<Integer, JComponent> entry : realized.entrySet()) {
+				int i = entry.getKey();
+				JComponent cell = entry.getValue();
+				cell.setBounds(0, offsets[i], width, heights[i]);
+				if (!cell.isValid())
+					cell.validate();
+			}
+			if (changed) {
+				revalidate();
+				repaint();
+				// Keep the item at the top of the viewport where it was.
+				if (anchor != -1 && offsets[anchor] != anchorY && getParent() instanceof JViewport) {
+					((JViewport) getParent()).setViewPosition(new Point(view.x, view.y + offsets[anchor] - anchorY));
+					scrolled = true;
+				}
+			}
+		} finally {
+			updatingCells = false;
+		}
+		if (scrolled)
+			updateCells();
+	}
+
+	/**
+	 * Measure the item in its cell. Offsets are left to the caller.
+	 * 
+	 * @return whether the height of the item changed
+	 */
+	private boolean measure(int i, JComponent cell, int width) {
+		cell.setBounds(0, offsets[i], width, Math.max(1, heights[i]));
+		cell.invalidate();
+		cell.validate();
+		int height = cell.getPreferredSize().height;
+		if (measuredWidths[i] == 0) {
+			measuredTotal += height;
+			measuredCount++;
+		} else {
+			// Counted already: replace the old height.
+			measuredTotal += height - heights[i];
+		}
+		measuredWidths[i] = width;
+		if (height == heights[i])
+			return false;
+		heights[i] = height;
+		return true;
+	}
+
+	private int estimatedHeight() {
+		return measuredCount == 0 ? DEFAULT_ESTIMATED_HEIGHT : (int) (measuredTotal / measuredCount);
+	}
+
+	private void updateOffsets(int from) {
+		for (int i = from; i < itemCount; i++)
+			offsets[i + 1] = offsets[i] + heights[i];
+	}
+
+	/**
+	 * The item at y, which must be within the list.
+	 */
+	private int rowAt(int y) {
+		int i = Arrays.binarySearch(offsets, 0, itemCount + 1, y);
+		// Items of height 0 share their offset with the next one; take the last.
+		if (i >= 0) {
+			while (i < itemCount - 1 && offsets[i + 1] == y)
+				i++;
+			return Math.min(i, itemCount - 1);
+		}
+		return Math.max(0, Math.min(-i - 2, itemCount - 1));
+	}
+
+	private JComponent realize(int i) {
+		JComponent cell = realized.get(i);
+		if (cell != null)
+			return cell;
+		Object item = items.get(i);
+		Object type = factory.getCellType(item);
+		List<JComponent> pool = recycled.get(type);
+		cell = pool == null || pool.isEmpty() ? createCell(type) : pool.remove(pool.size() - 1);
+		cell.putClientProperty(INDEX_KEY, i);
+		factory.bindCell(cell, item);
+		((ListItemListener) cell).onSelected(i == selectedId);
+		add(cell);
+		realized.put(i, cell);
+		return cell;
+	}
+
+	private JComponent createCell(Object type) {
+		JComponent cell = factory.createCell(type);
+		if (!(cell instanceof ListItemListener))
+			throw new IllegalArgumentException("Cells must implement ListItemListener");
+		cell.putClientProperty(TYPE_KEY, type);
+		addClickListener(cell);
+		cell.setFocusable(false);
+		cellVisibilities.put(cell, Visibility.HIDDEN);
+		return cell;
+	}
+
+	/**
+	 * Clicks select the item whose index the component carries, and double
+	 * clicks open it.
+	 */
+	private void addClickListener(JComponent component) {
+		component.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int id = (Integer) component.getClientProperty(INDEX_KEY);
+				switch (e.getClickCount()) {
+				case 1:
+					onItemSelected(id);
+					break;
+				case 2:
+					onItemSelected(id);
+					onItemClicked(id);
+					break;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Take the cell out of the list and keep it for reuse.
+	 */
+	private void recycle(JComponent cell) {
+		setCellVisibility(cell, Visibility.HIDDEN);
+		remove(cell);
+		Object type = cell.getClientProperty(TYPE_KEY);
+		List<JComponent> pool = recycled.get(type);
+		if (pool == null) {
+			pool = new ArrayList<JComponent>();
+			recycled.put(type, pool);
+		}
+		pool.add(cell);
+	}
+
+	private void setCellVisibility(JComponent cell, Visibility visibility) {
+		if (cellVisibilities.put(cell, visibility) == visibility)
+			return;
+		if (cell instanceof VisibilityListener)
+			((VisibilityListener) cell).onVisibilityChanged(visibility);
+	}
+
+	private void setVisibility(int id, Visibility visibility) {
+		if (visibilities.get(id) == visibility)
+			return;
+		visibilities.set(id, visibility);
+		JComponent c = components.get(id);
+		if (c instanceof VisibilityListener)
+			((VisibilityListener) c).onVisibilityChanged(visibility);
+	}
+
+	/**
+	 * 组件被选择时，将事件传递给组件
 	 * 
 	 * @param id
-	 *            ѡе
+	 *            被选中的序号
 	 */
 	private void onItemSelected(int id) {
 		requestFocus();
 		if (id == selectedId)
 			return;
-		if (selectedId != -1)
-			((ListItemListener) components.get(selectedId)).onSelected(false);
-		((ListItemListener) components.get(id)).onSelected(true);
+		if (selectedId != -1 && getCell(selectedId) != null)
+			((ListItemListener) getCell(selectedId)).onSelected(false);
+		if (getCell(id) != null)
+			((ListItemListener) getCell(id)).onSelected(true);
 		selectedId = id;
 	}
 
 	/**
-	 * ʱ¼ݸͼ
+	 * 组件被点击时，将事件传递给组件和监听器
 	 * 
 	 * @param id
-	 *            
+	 *            被点击的序号
 	 */
 	private void onItemClicked(int id) {
-		((ListItemListener) components.get(id)).onClicked();
+		if (virtual && !realized.containsKey(id)) {
+			// Selected with the keyboard and scrolled away: bring it back.
+			scrollRectToVisible(getRowBounds(id));
+			updateCells();
+		}
+		((ListItemListener) getCell(id)).onClicked();
 		if (actionListener != null)
 			actionListener.actionPerformed(null);
 	}
 
 	/**
-	 * ù
+	 * 设置公共的组件监听器
 	 * 
 	 * @param listener
-	 *            ʵ
+	 *            监听器实例
 	 */
 	public void setActionListener(ActionListener listener) {
 		actionListener = listener;
 	}
 
 	/**
-	 * ѡе
+	 * 被选中的组件。In virtualized mode, null if it is scrolled away.
 	 */
 	public JComponent getSelectedJComponent() {
 		if (selectedId == -1)
 			return null;
 		else
-			return components.get(selectedId);
+			return getCell(selectedId);
+	}
+
+	/**
+	 * 被选中的数据（非虚拟化模式下为组件）
+	 */
+	public Object getSelectedItem() {
+		return selectedId == -1 ? null : getItem(selectedId);
+	}
+
+	/**
+	 * The component of the item, null if it has none in virtualized mode.
+	 */
+	private JComponent getCell(int id) {
+		return virtual ? realized.get(id) : components.get(id);
 	}
 
 	/**
@@ -217,19 +906,98 @@ public class VerticalList extends JPanel implements Scrollable {
 
 	}
 
+	/**
+	 * 组件相对于可视区域的位置
+	 */
+	public static enum Visibility {
+		/**
+		 * At least partly in the viewport.
+		 */
+		VISIBLE,
+		/**
+		 * Within one viewport height of it.
+		 */
+		NEAR,
+		/**
+		 * Further away, or removed from the list.
+		 */
+		HIDDEN
+	}
+
+	/**
+	 * Interface that components which care about being scrolled into view may
+	 * implement. Items start HIDDEN and are told every change afterwards, always
+	 * on the event dispatch thread.
+	 */
+	public static interface VisibilityListener {
+
+		void onVisibilityChanged(Visibility visibility);
+
+	}
+
+	/**
+	 * 虚拟化模式下为数据创建和绑定组件。
+	 */
+	public static interface CellFactory<T> {
+
+		/**
+		 * Cells are only reused for items of the same type; types are compared
+		 * with equals.
+		 */
+		Object getCellType(T item);
+
+		/**
+		 * @return a new cell for items of the type; must implement
+		 *         ListItemListener, and may implement VisibilityListener
+		 */
+		JComponent createCell(Object type);
+
+		/**
+		 * Show the item in the cell, which was made for its type and may have
+		 * shown another item before.
+		 */
+		void bindCell(JComponent cell, T item);
+
+		/**
+		 * Identity of the item across updateItems calls, compared with equals;
+		 * e.g. the pid of a topic. By default the item itself.
+		 */
+		default Object getKey(T item) {
+			return item;
+		}
+
+		/**
+		 * Whether an item with the same key as one on display looks the same, in
+		 * which case the list keeps the old item and its cell as they are.
+		 */
+		default boolean isSameContent(T oldItem, T newItem) {
+			return oldItem == newItem;
+		}
+
+	}
+
 	/**
 	 * --- The Scrollable Implementation --- Mostly copied from JList.
 	 */
 
+	private Rectangle getRowBounds(int i) {
+		return new Rectangle(0, offsets[i], getWidth(), heights[i]);
+	}
+
 	private int locationToIndex(Point p) {
-		for (int i = 0; i < itemCount; i++)
-			if (components.get(i).getBounds().contains(p))
-				return i;
-		return -1;
+		if (offsets == null || p.y < 0 || p.y >= offsets[itemCount])
+			return -1;
+		return rowAt(p.y);
 	}
 
 	@Override
 	public Dimension getPreferredScrollableViewportSize() {
+		if (virtual) {
+			int width = 0;
+			for (Component c : realized.values())
+				width = Math.max(width, c.getPreferredSize().width);
+			return new Dimension(width, PREFERRED_HEIGHT);
+		}
 		if (components.isEmpty()) {
 			return getPreferredSize();
 		}
@@ -250,12 +1018,12 @@ public class VerticalList extends JPanel implements Scrollable {
 		else {
 			/* Scroll Down */
 			if (direction > 0) {
-				Rectangle r = components.get(row).getBounds();
+				Rectangle r = getRowBounds(row);
 				return (r == null) ? 0 : r.height - (visibleRect.y - r.y);
 			}
 			/* Scroll Up */
 			else {
-				Rectangle r = components.get(row).getBounds();
+				Rectangle r = getRowBounds(row);
 				/*
 				 * The first row is completely visible and it's row 0. We're done.
 				 */
@@ -270,7 +1038,7 @@ public class VerticalList extends JPanel implements Scrollable {
 					if (row == 0)
 						return 0;
 					else
-						return components.get(row).getHeight();
+						return getRowBounds(row).height;
 				}
 				/*
 				 * The first row is partially visible, return the height of hidden part.
@@ -292,7 +1060,7 @@ public class VerticalList extends JPanel implements Scrollable {
 			// last cell is the lowest left cell
 			int last = locationToIndex(new Point(visibleRect.x, visibleRect.y + visibleRect.height - 1));
 			if (last != -1) {
-				Rectangle lastRect = components.get(last).getBounds();
+				Rectangle lastRect = getRowBounds(last);
 				if (lastRect != null) {
 					inc = lastRect.y - visibleRect.y;
 					if ((inc == 0) && (last < itemCount - 1)) {
@@ -309,18 +1077,18 @@ public class VerticalList extends JPanel implements Scrollable {
 				if (first == -1) {
 					first = locationToIndex(visibleRect.getLocation());
 				}
-				Rectangle newFirstRect = components.get(newFirst).getBounds();
-				Rectangle firstRect = components.get(first).getBounds();
+				Rectangle newFirstRect = getRowBounds(newFirst);
+				Rectangle firstRect = getRowBounds(first);
 				if ((newFirstRect != null) && (firstRect != null)) {
 					while ((newFirstRect.y + visibleRect.height < firstRect.y + firstRect.height)
 							&& (newFirstRect.y < firstRect.y)) {
 						newFirst++;
-						newFirstRect = components.get(newFirst).getBounds();
+						newFirstRect = getRowBounds(newFirst);
 					}
 					inc = visibleRect.y - newFirstRect.y;
 					if ((inc <= 0) && (newFirstRect.y > 0)) {
 						newFirst--;
-						newFirstRect = components.get(newFirst).getBounds();
+						newFirstRect = getRowBounds(newFirst);
 						if (newFirstRect != null) {
 							inc = visibleRect.y - newFirstRect.y;
 						}
@@ -0,0 +1,45 @@
+package com.lyl.pkuhole.widgets;
+
+import java.awt.Dimension;
+import java.awt.Insets;
+
+import javax.swing.JTextArea;
+
+import com.lyl.pkuhole.utils.TextLayoutCache;
+
+/**
+ * 自动换行的只读文本框，高度由TextLayoutCache计算。
+ *
+ * A line-wrapped JTextArea works out its preferred height by laying out its
+ * text again on every layout pass; this one asks the cache for the layout at
+ * its current width instead, so a list re-measuring its cells, or measuring
+ * a cell again after a resize back to an earlier width, costs a lookup.
+ */
+public class WrappedTextArea extends JTextArea {
+
+	// The text as last set, so the cache key isn't copied out of the document.
+	private String text = "";
+
+	public WrappedTextArea() {
+		setEditable(false);
+		setLineWrap(true);
+	}
+
+	@Override
+	public void setText(String t) {
+		text = t == null ? "" : t;
+		super.setText(t);
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		Insets insets = getInsets();
+		int width = TextLayoutCache.getTextWidth(this, getWidth());
+		// Not laid out yet, or edited since: measure the usual way.
+		if (width <= 0 || isPreferredSizeSet() || getDocument().getLength() != text.length())
+			return super.getPreferredSize();
+		TextLayoutCache.Layout layout = TextLayoutCache.get(text, getFontMetrics(getFont()), width);
+		return new Dimension(getWidth(), layout.getHeight() + insets.top + insets.bottom);
+	}
+
+}